@@ -0,0 +1,78 @@
+package nl.itslars.jedisjson.benchmarks;
+
+import nl.itslars.jedisjson.JedisJSON;
+import nl.itslars.jedisjson.JedisJSONConfig;
+import nl.itslars.jedisjson.LocalRedisServer;
+import nl.itslars.jedisjson.codec.PacketCodec;
+import nl.itslars.jedisjson.listeners.types.Conversation;
+import nl.itslars.jedisjson.packet.BinaryPacketEnvelope;
+import nl.itslars.jedisjson.packet.JedisJSONPacketHeader;
+import nl.itslars.jedisjson.packet.PacketType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast a packet of a running conversation is dispatched to the consumer of the current state.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversationBenchmark {
+
+    private static final byte[] CHANNEL = "benchmark".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"1", "64"})
+    private int stateCount;
+
+    private LocalRedisServer server;
+    private JedisJSON client;
+    private Conversation<PayloadPacket> conversation;
+    private byte[] message;
+    private Blackhole blackhole;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        server = new LocalRedisServer();
+        client = new JedisJSON(server.getHost(), server.getPort(), "benchmark", new JedisJSONConfig().setJmxEnabled(false));
+        conversation = client.createConversation(PayloadPacket.class, "other", stateCount - 1);
+        for (int state = 0; state < stateCount; state++) {
+            conversation.onState(state, packet -> blackhole.consume(packet));
+        }
+
+        // The conversation ID is the packet ID of every packet in the conversation
+        PacketCodec codec = client.getCodec(PayloadPacket.class);
+        PacketType type = client.getPacketRegistry().register(PayloadPacket.class);
+        JedisJSONPacketHeader header = new JedisJSONPacketHeader(conversation.getConversationID(), "other", type.getName(), type.getId());
+        message = BinaryPacketEnvelope.write(header, new PayloadPacket(1, 16), codec, null, Integer.MAX_VALUE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.shutdown();
+        server.close();
+    }
+
+    @Benchmark
+    public void dispatch(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        client.getJedisPacketHandler().onMessage(CHANNEL, message);
+    }
+}
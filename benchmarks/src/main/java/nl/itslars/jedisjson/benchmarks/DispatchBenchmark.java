@@ -0,0 +1,123 @@
+package nl.itslars.jedisjson.benchmarks;
+
+import nl.itslars.jedisjson.JedisJSON;
+import nl.itslars.jedisjson.JedisJSONConfig;
+import nl.itslars.jedisjson.LocalRedisServer;
+import nl.itslars.jedisjson.codec.PacketCodec;
+import nl.itslars.jedisjson.listeners.types.JedisJSONPacketListener;
+import nl.itslars.jedisjson.packet.BinaryPacketEnvelope;
+import nl.itslars.jedisjson.packet.JedisJSONPacketHeader;
+import nl.itslars.jedisjson.packet.PacketType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast an incoming packet is matched to its listener, while many listeners
+ * (like pending replies) are registered. The packets are small, so the lookup dominates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    private static final byte[] CHANNEL = "benchmark".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"1", "1000", "100000"})
+    private int listenerCount;
+
+    private LocalRedisServer server;
+    private JedisJSON client;
+    private byte[][] listenerMessages;
+    private byte[] classMessage;
+    private int next;
+    private Blackhole blackhole;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        server = new LocalRedisServer();
+        client = new JedisJSON(server.getHost(), server.getPort(), "benchmark", new JedisJSONConfig().setJmxEnabled(false));
+        client.onReceive(PayloadPacket.class, packet -> {
+            blackhole.consume(packet);
+        });
+        PacketCodec codec = client.getCodec(PayloadPacket.class);
+        PacketType type = client.getPacketRegistry().register(PayloadPacket.class);
+        PayloadPacket packet = new PayloadPacket(1, 16);
+
+        listenerMessages = new byte[listenerCount][];
+        for (int i = 0; i < listenerCount; i++) {
+            String id = client.getIdGenerator().nextId();
+            client.getJedisPacketHandler().registerListener(id, new BlackholeListener(codec), false);
+            listenerMessages[i] = BinaryPacketEnvelope.write(new JedisJSONPacketHeader(id, "benchmark", type.getName(), type.getId()), packet, codec, null, Integer.MAX_VALUE);
+        }
+        classMessage = BinaryPacketEnvelope.write(new JedisJSONPacketHeader(client.getIdGenerator().nextId(), "benchmark", type.getName(), type.getId()),
+                packet, codec, null, Integer.MAX_VALUE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.shutdown();
+        server.close();
+    }
+
+    /**
+     * A packet that belongs to one of the registered listeners, like a reply.
+     */
+    @Benchmark
+    public void listenerById(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        if (++next == listenerMessages.length) next = 0;
+        client.getJedisPacketHandler().onMessage(CHANNEL, listenerMessages[next]);
+    }
+
+    /**
+     * A packet that does not belong to a registered listener, and is handled by the listener of its class.
+     */
+    @Benchmark
+    public void listenerByClass(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        client.getJedisPacketHandler().onMessage(CHANNEL, classMessage);
+    }
+
+    private class BlackholeListener implements JedisJSONPacketListener<PayloadPacket> {
+
+        private PacketCodec codec;
+
+        private BlackholeListener(PacketCodec codec) {
+            this.codec = codec;
+        }
+
+        @Override
+        public void accept(PayloadPacket packet) {
+            blackhole.consume(packet);
+        }
+
+        @Override
+        public PacketCodec getPacketCodec() {
+            return codec;
+        }
+
+        @Override
+        public Type getPacketType() {
+            return PayloadPacket.class;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package nl.itslars.jedisjson.benchmarks;
+
+import nl.itslars.jedisjson.JedisJSON;
+import nl.itslars.jedisjson.JedisJSONConfig;
+import nl.itslars.jedisjson.LocalRedisServer;
+import nl.itslars.jedisjson.codec.PacketCodec;
+import nl.itslars.jedisjson.codec.WireFormat;
+import nl.itslars.jedisjson.packet.BinaryPacketEnvelope;
+import nl.itslars.jedisjson.packet.JedisJSONPacketEnvelope;
+import nl.itslars.jedisjson.packet.JedisJSONPacketHeader;
+import nl.itslars.jedisjson.packet.PacketType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast packets are serialized into an envelope, and how fast an envelope is read,
+ * decoded and handed to its listener by the subscription thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnvelopeBenchmark {
+
+    private static final byte[] CHANNEL = "benchmark".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"JSON", "LEGACY_JSON", "BINARY"})
+    private WireFormat wireFormat;
+    @Param({"16", "1024", "65536"})
+    private int payloadSize;
+
+    private LocalRedisServer server;
+    private JedisJSON client;
+    private PacketCodec codec;
+    private PayloadPacket packet;
+    private JedisJSONPacketHeader header;
+    private byte[] message;
+    private Blackhole blackhole;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        server = new LocalRedisServer();
+        client = new JedisJSON(server.getHost(), server.getPort(), "benchmark", new JedisJSONConfig().setJmxEnabled(false));
+        client.onReceive(PayloadPacket.class, packet -> {
+            blackhole.consume(packet);
+        });
+        codec = client.getCodec(PayloadPacket.class);
+        packet = new PayloadPacket(1, payloadSize);
+        PacketType type = client.getPacketRegistry().register(PayloadPacket.class);
+        header = new JedisJSONPacketHeader(client.getIdGenerator().nextId(), "benchmark", type.getName(), type.getId());
+        message = encode();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.shutdown();
+        server.close();
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        switch (wireFormat) {
+            case BINARY:
+                return BinaryPacketEnvelope.write(header, packet, codec, null, Integer.MAX_VALUE);
+            case LEGACY_JSON:
+                return JedisJSONPacketEnvelope.write(header, packet, codec, true, null, Integer.MAX_VALUE);
+            default:
+                return JedisJSONPacketEnvelope.write(header, packet, codec, false, null, Integer.MAX_VALUE);
+        }
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        client.getJedisPacketHandler().onMessage(CHANNEL, message);
+    }
+}
@@ -0,0 +1,214 @@
+package nl.itslars.jedisjson.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import nl.itslars.jedisjson.JedisJSON;
+import nl.itslars.jedisjson.JedisJSONConfig;
+import nl.itslars.jedisjson.LocalRedisServer;
+import nl.itslars.jedisjson.codec.WireFormat;
+import nl.itslars.jedisjson.listeners.types.Channel;
+import nl.itslars.jedisjson.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Broadcasts packets from a number of senders to a number of receivers over one channel, and reports
+ * the throughput and the latency from sending until handling a packet.
+ * Arguments are given as key=value, for example: {@code receivers=8 payload=1024 duration=30 out=results.jsonl label=abc123}
+ * <ul>
+ *     <li>host, port: the Redis server. Without a host, a local Redis stand-in is started</li>
+ *     <li>senders: the amount of sending clients (1)</li>
+ *     <li>receivers: the amount of receiving clients, so the fan-out of every packet (4)</li>
+ *     <li>payload: the payload size of a packet in characters (256)</li>
+ *     <li>rate: the amount of packets per second per sender, or 0 to send as fast as possible (0)</li>
+ *     <li>warmup, duration: the warmup and measurement time in seconds (3, 10)</li>
+ *     <li>wireFormat, publisherThreads, dispatcherThreads, localDelivery: the settings of all clients (JSON, 1, 0, false).
+ *     All clients run in this JVM, so with localDelivery=true the packets are handed over directly instead of through Redis</li>
+ *     <li>out: a file to append the result to as JSON line, after comparing it with the last result with the same settings</li>
+ *     <li>label: a label for the result, like the commit hash</li>
+ * </ul>
+ */
+public class LoadGenerator {
+
+    private static final String CHANNEL = "load";
+    // The settings that determine whether two results can be compared, with their default values
+    private static final Map<String, String> SETTINGS = new LinkedHashMap<>();
+
+    static {
+        SETTINGS.put("senders", "1");
+        SETTINGS.put("receivers", "4");
+        SETTINGS.put("payload", "256");
+        SETTINGS.put("rate", "0");
+        SETTINGS.put("duration", "10");
+        SETTINGS.put("wireFormat", "JSON");
+        SETTINGS.put("publisherThreads", "1");
+        SETTINGS.put("dispatcherThreads", "0");
+        SETTINGS.put("localDelivery", "false");
+    }
+
+    private Map<String, String> arguments = new HashMap<>();
+    private LatencyHistogram latency = new LatencyHistogram();
+    private LongAdder delivered = new LongAdder();
+    private LongAdder sent = new LongAdder();
+    private volatile long measureStart = Long.MAX_VALUE;
+    private volatile long measureEnd = Long.MAX_VALUE;
+    private volatile boolean running = true;
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) throw new IllegalArgumentException("Arguments must be given as key=value: " + arg);
+            generator.arguments.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        generator.run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        for (Map.Entry<String, String> setting : SETTINGS.entrySet()) arguments.putIfAbsent(setting.getKey(), setting.getValue());
+        int senders = intArgument("senders");
+        int receivers = intArgument("receivers");
+        int payload = intArgument("payload");
+        int rate = intArgument("rate");
+        int warmup = Integer.parseInt(arguments.getOrDefault("warmup", "3"));
+        int duration = intArgument("duration");
+        WireFormat wireFormat = WireFormat.valueOf(arguments.get("wireFormat"));
+        JedisJSONConfig config = new JedisJSONConfig()
+                .setJmxEnabled(false)
+                .setPublisherThreads(intArgument("publisherThreads"))
+                .setDispatcherThreads(intArgument("dispatcherThreads"))
+                .setLocalDelivery(Boolean.parseBoolean(arguments.get("localDelivery")));
+
+        LocalRedisServer server = arguments.containsKey("host") ? null : new LocalRedisServer();
+        String host = server == null ? arguments.get("host") : server.getHost();
+        int port = server == null ? Integer.parseInt(arguments.getOrDefault("port", "6379")) : server.getPort();
+
+        List<JedisJSON> clients = new ArrayList<>();
+        for (int i = 0; i < receivers; i++) {
+            JedisJSON receiver = new JedisJSON(host, port, "load-receiver-" + i, config);
+            receiver.enterChannel(CHANNEL, PayloadPacket.class).onReceive(this::receive);
+            clients.add(receiver);
+        }
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < senders; i++) {
+            JedisJSON sender = new JedisJSON(host, port, "load-sender-" + i, config);
+            sender.setWireFormat(wireFormat);
+            Channel<PayloadPacket> channel = sender.enterChannel(CHANNEL, PayloadPacket.class);
+            clients.add(sender);
+            Thread thread = new Thread(() -> send(channel, payload, rate), "load-sender-" + i);
+            threads.add(thread);
+        }
+        // Give the subscriptions some time to reach the server
+        Thread.sleep(500);
+
+        System.out.println("Warming up for " + warmup + " seconds...");
+        long start = System.nanoTime();
+        measureStart = start + TimeUnit.SECONDS.toNanos(warmup);
+        measureEnd = measureStart + TimeUnit.SECONDS.toNanos(duration);
+        for (Thread thread : threads) thread.start();
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(measureStart - start));
+        System.out.println("Measuring for " + duration + " seconds...");
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(measureEnd - measureStart));
+        running = false;
+        for (Thread thread : threads) thread.join();
+        // Packets that were sent during the measurement may still be on their way
+        Thread.sleep(1000);
+
+        JsonObject result = new JsonObject();
+        result.addProperty("label", arguments.getOrDefault("label", ""));
+        for (String setting : SETTINGS.keySet()) result.addProperty(setting, arguments.get(setting));
+        result.addProperty("sentPerSecond", sent.sum() / (double) duration);
+        result.addProperty("deliveredPerSecond", delivered.sum() / (double) duration);
+        result.addProperty("p50Micros", latency.getPercentile(50) / 1000.0);
+        result.addProperty("p99Micros", latency.getPercentile(99) / 1000.0);
+        result.addProperty("p999Micros", latency.getPercentile(99.9) / 1000.0);
+        result.addProperty("maxMicros", latency.getMax() / 1000.0);
+        report(result);
+
+        for (JedisJSON client : clients) client.shutdown();
+        if (server != null) server.close();
+    }
+
+    private void send(Channel<PayloadPacket> channel, int payload, int rate) {
+        PayloadPacket packet = new PayloadPacket(0, payload);
+        long interval = rate <= 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / rate;
+        long next = System.nanoTime();
+        while (running) {
+            if (interval > 0) {
+                next += interval;
+                long wait = next - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+            }
+            // The packet is serialized before broadcast returns, so it can be reused
+            long now = System.nanoTime();
+            channel.broadcast(packet.withSentAt(now));
+            if (now >= measureStart && now < measureEnd) sent.increment();
+        }
+    }
+
+    private void receive(PayloadPacket packet) {
+        long sentAt = packet.getSentAt();
+        if (sentAt < measureStart || sentAt >= measureEnd) return;
+        latency.record(System.nanoTime() - sentAt);
+        delivered.increment();
+    }
+
+    private void report(JsonObject result) throws IOException {
+        System.out.printf("Sent %.0f packets/s, delivered %.0f packets/s%n",
+                result.get("sentPerSecond").getAsDouble(), result.get("deliveredPerSecond").getAsDouble());
+        System.out.printf("Latency p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n",
+                result.get("p50Micros").getAsDouble(), result.get("p99Micros").getAsDouble(),
+                result.get("p999Micros").getAsDouble(), result.get("maxMicros").getAsDouble());
+
+        String out = arguments.get("out");
+        if (out == null) return;
+        Path path = Paths.get(out);
+        Gson gson = new Gson();
+        if (Files.exists(path)) {
+            JsonObject previous = null;
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                if (line.trim().isEmpty()) continue;
+                JsonObject candidate = gson.fromJson(line, JsonObject.class);
+                if (sameSettings(candidate, result)) previous = candidate;
+            }
+            if (previous != null) compare(previous, result);
+        }
+        Files.write(path, (gson.toJson(result) + System.lineSeparator()).getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static boolean sameSettings(JsonObject a, JsonObject b) {
+        for (String setting : SETTINGS.keySet()) {
+            if (!a.has(setting) || !a.get(setting).equals(b.get(setting))) return false;
+        }
+        return true;
+    }
+
+    private static void compare(JsonObject previous, JsonObject result) {
+        System.out.println("Compared to " + (previous.get("label").getAsString().isEmpty() ? "the previous result" : previous.get("label").getAsString()) + ":");
+        for (String metric : new String[]{"deliveredPerSecond", "p50Micros", "p99Micros", "p999Micros"}) {
+            double before = previous.get(metric).getAsDouble();
+            double after = result.get(metric).getAsDouble();
+            double change = before == 0 ? 0 : (after - before) / before * 100;
+            System.out.printf("  %s: %.1f -> %.1f (%+.1f%%)%n", metric, before, after, change);
+        }
+    }
+
+    private int intArgument(String name) {
+        return Integer.parseInt(arguments.get(name));
+    }
+}
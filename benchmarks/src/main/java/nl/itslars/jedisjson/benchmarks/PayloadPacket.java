@@ -0,0 +1,36 @@
+package nl.itslars.jedisjson.benchmarks;
+
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+
+import java.util.Arrays;
+
+/**
+ * The packet that is sent by the benchmarks, with a payload of a configurable size.
+ */
+public class PayloadPacket extends JedisJSONPacket {
+
+    private long sentAt;
+    private int sequence;
+    private String payload;
+
+    public PayloadPacket(int sequence, int payloadSize) {
+        this.sentAt = System.nanoTime();
+        this.sequence = sequence;
+        char[] chars = new char[payloadSize];
+        Arrays.fill(chars, 'x');
+        this.payload = new String(chars);
+    }
+
+    public long getSentAt() {
+        return sentAt;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public PayloadPacket withSentAt(long sentAt) {
+        this.sentAt = sentAt;
+        return this;
+    }
+}
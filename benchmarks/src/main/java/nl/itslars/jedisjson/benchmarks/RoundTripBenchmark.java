@@ -0,0 +1,79 @@
+package nl.itslars.jedisjson.benchmarks;
+
+import nl.itslars.jedisjson.JedisJSON;
+import nl.itslars.jedisjson.JedisJSONConfig;
+import nl.itslars.jedisjson.LocalRedisServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Measures the round trip of a request and its reply between two clients,
+ * through the local Redis stand-in, or handed over directly if local delivery is enabled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+
+    @Param({"false", "true"})
+    private boolean localDelivery;
+    @Param({"0", "4"})
+    private int dispatcherThreads;
+    @Param({"16", "4096"})
+    private int payloadSize;
+
+    private LocalRedisServer server;
+    private JedisJSON requester;
+    private JedisJSON responder;
+    private PayloadPacket packet;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        server = new LocalRedisServer();
+        JedisJSONConfig config = new JedisJSONConfig()
+                .setJmxEnabled(false)
+                .setLocalDelivery(localDelivery)
+                .setDispatcherThreads(dispatcherThreads);
+        requester = new JedisJSON(server.getHost(), server.getPort(), "requester", config);
+        responder = new JedisJSON(server.getHost(), server.getPort(), "responder", config);
+        responder.onReceive(PayloadPacket.class, (Function<PayloadPacket, PayloadPacket>) packet -> packet);
+        packet = new PayloadPacket(1, payloadSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        requester.shutdown();
+        responder.shutdown();
+        server.close();
+    }
+
+    @Benchmark
+    public PayloadPacket request() throws Exception {
+        return requester.request("responder", packet, PayloadPacket.class).get();
+    }
+
+    @Benchmark
+    public PayloadPacket sendWithReply() throws Exception {
+        CompletableFuture<PayloadPacket> reply = new CompletableFuture<>();
+        requester.sendWithReply("responder", packet, reply::complete);
+        return reply.get();
+    }
+}
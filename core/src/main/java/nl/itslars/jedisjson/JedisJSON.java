@@ -0,0 +1,931 @@
+package nl.itslars.jedisjson;
+
+import com.google.gson.Gson;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.SneakyThrows;
+import nl.itslars.jedisjson.cache.CacheEviction;
+import nl.itslars.jedisjson.cache.CachedResponse;
+import nl.itslars.jedisjson.cache.RequestBodyCodec;
+import nl.itslars.jedisjson.cache.ResponseCache;
+import nl.itslars.jedisjson.codec.GsonPacketCodec;
+import nl.itslars.jedisjson.codec.PacketCodec;
+import nl.itslars.jedisjson.codec.WireFormat;
+import nl.itslars.jedisjson.compress.DeflatePacketCompressor;
+import nl.itslars.jedisjson.compress.PacketCompressor;
+import nl.itslars.jedisjson.dispatch.OverloadListener;
+import nl.itslars.jedisjson.dispatch.OverloadPolicy;
+import nl.itslars.jedisjson.dispatch.PacketDispatcher;
+import nl.itslars.jedisjson.dispatch.Priority;
+import nl.itslars.jedisjson.dispatch.VirtualThreads;
+import nl.itslars.jedisjson.id.CounterPacketIdGenerator;
+import nl.itslars.jedisjson.id.PacketIdGenerator;
+import nl.itslars.jedisjson.listeners.ConversationHandler;
+import nl.itslars.jedisjson.listeners.HeaderFilter;
+import nl.itslars.jedisjson.listeners.JedisPacketHandler;
+import nl.itslars.jedisjson.listeners.PacketStreamConsumer;
+import nl.itslars.jedisjson.listeners.types.Channel;
+import nl.itslars.jedisjson.listeners.types.Conversation;
+import nl.itslars.jedisjson.listeners.types.JedisJSONPacketListener;
+import nl.itslars.jedisjson.listeners.types.MultiResponseListener;
+import nl.itslars.jedisjson.listeners.types.NewIncomingPacketListener;
+import nl.itslars.jedisjson.listeners.types.PacketStreamListener;
+import nl.itslars.jedisjson.listeners.types.SingleResponseListener;
+import nl.itslars.jedisjson.metrics.JedisJSONMetrics;
+import nl.itslars.jedisjson.metrics.TrafficMetrics;
+import nl.itslars.jedisjson.packet.BinaryPacketEnvelope;
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+import nl.itslars.jedisjson.packet.JedisJSONPacketEnvelope;
+import nl.itslars.jedisjson.packet.JedisJSONPacketHeader;
+import nl.itslars.jedisjson.packet.PacketChunk;
+import nl.itslars.jedisjson.packet.PacketRegistry;
+import nl.itslars.jedisjson.packet.PacketType;
+import nl.itslars.jedisjson.publish.PacketPublisher;
+import nl.itslars.jedisjson.service.ServiceGroup;
+import nl.itslars.jedisjson.service.ServiceRegistry;
+import nl.itslars.jedisjson.stream.StreamConsumer;
+import nl.itslars.jedisjson.stream.WorkQueue;
+import nl.itslars.jedisjson.timeout.TimeoutScheduler;
+import nl.itslars.jedisjson.transport.LocalDeliveryMode;
+import nl.itslars.jedisjson.transport.LocalPacket;
+import nl.itslars.jedisjson.transport.LocalTransport;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+public class JedisJSON {
+
+    //TODO: Logging
+    private static final Logger LOGGER = Logger.getLogger(JedisJSON.class.getName());
+
+    @Getter
+    private String clientName;
+    @Getter
+    private Gson defaultGson = new Gson();
+
+    // Codecs
+    @Getter
+    private PacketRegistry packetRegistry = new PacketRegistry();
+    @Getter
+    private PacketCodec defaultCodec = new GsonPacketCodec(defaultGson);
+    @Getter
+    @Setter
+    private WireFormat wireFormat = WireFormat.JSON;
+    private Map<Class<?>, PacketCodec> codecs = new ConcurrentHashMap<>();
+    private Map<Class<?>, PacketCodec> typeCodecs = new ConcurrentHashMap<>();
+
+    // Compression
+    @Getter
+    @Setter
+    private PacketCompressor compressor = new DeflatePacketCompressor();
+    private Map<Class<?>, Integer> classCompressionThresholds = new ConcurrentHashMap<>();
+    private Map<String, Integer> targetCompressionThresholds = new ConcurrentHashMap<>();
+
+    // Priority lanes
+    private Map<Class<?>, Priority> classPriorities = new ConcurrentHashMap<>();
+    private Map<String, Priority> targetPriorities = new ConcurrentHashMap<>();
+
+    @Getter
+    @Setter
+    private PacketIdGenerator idGenerator = new CounterPacketIdGenerator();
+    private AtomicLong transferCounter = new AtomicLong();
+
+    // Jedis
+    @Getter
+    private JedisJSONConfig config;
+    private String host;
+    private int port;
+    private JedisPool jedisPool;
+    private PacketPublisher publisher;
+    private PacketDispatcher dispatcher;
+    @Getter
+    private LocalTransport localTransport;
+    private PacketDispatcher localDispatcher;
+    // Runs the tasks of execute when there are no dispatcher threads, started when first needed
+    private PacketDispatcher taskDispatcher;
+    @Getter
+    private TimeoutScheduler timeoutScheduler;
+    @Getter
+    private JedisJSONMetrics metrics;
+    private List<StreamConsumer> streamConsumers = new CopyOnWriteArrayList<>();
+    // The reply caches of onReceive functions, by request class
+    private Map<Class<?>, ResponseCache> responseCaches = new ConcurrentHashMap<>();
+    // Started when the first service group is used
+    private ServiceRegistry serviceRegistry;
+    // The filters of all incoming packets, as array so they are checked without allocating an iterator
+    @Getter
+    private volatile HeaderFilter[] headerFilters = new HeaderFilter[0];
+    @Getter
+    private JedisPacketHandler jedisPacketHandler;
+    @Getter
+    private ConversationHandler conversationHandler;
+
+    public JedisJSON(String host, int port) throws UnknownHostException {
+        this(host, port, InetAddress.getLocalHost().getHostName());
+    }
+
+    public JedisJSON(String host, int port, String clientName) {
+        this(host, port, clientName, new JedisJSONConfig());
+    }
+
+    @SneakyThrows
+    public JedisJSON(String host, int port, String clientName, JedisJSONConfig config) {
+        LOGGER.info("Enabling JedisJSON...");
+        this.clientName = clientName;
+        this.config = config;
+        this.host = host;
+        this.port = port;
+
+        // Every publisher thread has its own connection, next to the subscription connections and the service registry.
+        // Priority lanes add a publisher thread and a subscription connection for the high lane.
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        int connections = config.getPublisherThreads() + config.getSubscriptionConnections() + 2 + (config.isPriorityLanes() ? 2 : 0);
+        poolConfig.setMaxTotal(Math.max(poolConfig.getMaxTotal(), connections));
+        this.jedisPool = new JedisPool(poolConfig, host, port, 5000);
+        this.publisher = new PacketPublisher(jedisPool, config);
+        this.timeoutScheduler = new TimeoutScheduler(config.getTimeoutTickMillis(), config.getTimeoutWheelSize());
+        if (config.getDispatcherThreads() > 0) {
+            this.dispatcher = new PacketDispatcher(config.getDispatcherThreads(), config.getDispatchQueueCapacity(),
+                    config.getDispatchHighWatermark(), config.getDispatchLowWatermark());
+            dispatcher.setDefaultOverloadPolicy(config.getDefaultOverloadPolicy());
+        }
+        this.metrics = new JedisJSONMetrics(clientName, config, publisher, dispatcher);
+        if (dispatcher != null) {
+            dispatcher.setShedHandler(metrics::onShed);
+            dispatcher.addOverloadListener(metrics);
+        }
+        if (config.isLocalDelivery()) {
+            this.localTransport = LocalTransport.get(host, port);
+            this.localDispatcher = dispatcher == null ? new PacketDispatcher(1) : dispatcher;
+        }
+        this.jedisPacketHandler = new JedisPacketHandler(this, jedisPool, dispatcher, localDispatcher);
+        jedisPacketHandler.subscribe(clientName);
+        if (localTransport != null) localTransport.register(this);
+
+        this.conversationHandler = new ConversationHandler(this);
+        if (config.isVirtualThreadListeners() && !VirtualThreads.isSupported()) LOGGER.warning("Virtual threads need Java 21 or higher, so listeners do not run on virtual threads");
+        LOGGER.info("JedisJSON enabled!");
+    }
+
+    public void shutdown() {
+        // Incoming packets that are already received are still handled, and their replies are still sent
+        if (localTransport != null) localTransport.unregister(this);
+        for (StreamConsumer consumer : streamConsumers) consumer.shutdown();
+        for (StreamConsumer consumer : streamConsumers) consumer.awaitShutdown();
+        synchronized (this) {
+            if (serviceRegistry != null) serviceRegistry.shutdown();
+            if (taskDispatcher != null) taskDispatcher.shutdown();
+        }
+        jedisPacketHandler.close();
+        if (dispatcher != null) dispatcher.shutdown();
+        if (localDispatcher != null && localDispatcher != dispatcher) localDispatcher.shutdown();
+        publisher.shutdown();
+        timeoutScheduler.shutdown();
+        jedisPool.close();
+        metrics.shutdown();
+    }
+
+    /**
+     * Registers the codec that should be used for all packets of the given class,
+     * when no GSON instance is supplied explicitly. Both the sending and receiving clients need to register the codec.
+     * @param clazz The packet class
+     * @param codec The codec
+     */
+    public void registerCodec(Class<? extends JedisJSONPacket> clazz, PacketCodec codec) {
+        codecs.put(clazz, codec);
+        typeCodecs.remove(clazz);
+    }
+
+    public void setDefaultCodec(PacketCodec defaultCodec) {
+        this.defaultCodec = defaultCodec;
+        typeCodecs.clear();
+    }
+
+    /**
+     * Returns the codec of the given packet class, for that class specifically.
+     * Codecs can resolve everything they need for a class in advance, like the GSON type adapter.
+     * @param clazz The packet class
+     * @return The codec
+     */
+    public PacketCodec getCodec(Class<?> clazz) {
+        PacketCodec codec = typeCodecs.get(clazz);
+        if (codec != null) return codec;
+        return typeCodecs.computeIfAbsent(clazz, type -> codecs.getOrDefault(type, defaultCodec).forType(type));
+    }
+
+    /**
+     * Registers the packet class with the given type ID. The binary wire format sends this ID instead of the class name.
+     * All clients that send or receive the packet class must register the same ID, before they use the class.
+     * Instead of registering the ID, you can also annotate the class with {@link nl.itslars.jedisjson.packet.PacketTypeId}.
+     * @param clazz The packet class
+     * @param typeId The type ID, which must be at least {@link PacketRegistry#FIRST_USER_TYPE_ID}
+     */
+    public void registerPacket(Class<? extends JedisJSONPacket> clazz, int typeId) {
+        // The class may already have a listener, that was registered by name before the class got its type ID
+        jedisPacketHandler.getNewIncomingPacketHandler().onTypeIdAssigned(packetRegistry.register(clazz, typeId));
+    }
+
+    /**
+     * Sets what happens to incoming packets of the given class while the dispatcher threads are overloaded.
+     * This requires dispatcher threads, because without them there is no queue of incoming packets.
+     * @param clazz The packet class
+     * @param policy The overload policy
+     */
+    public void setOverloadPolicy(Class<? extends JedisJSONPacket> clazz, OverloadPolicy policy) {
+        if (dispatcher == null) throw new IllegalStateException("Overload policies require dispatcher threads");
+        packetRegistry.register(clazz);
+        dispatcher.setOverloadPolicy(clazz, policy);
+    }
+
+    /**
+     * Registers a listener that is notified when the dispatcher threads become overloaded, and when they recover.
+     * @param listener The listener
+     */
+    public void addOverloadListener(OverloadListener listener) {
+        if (dispatcher == null) throw new IllegalStateException("Overload listeners require dispatcher threads");
+        dispatcher.addOverloadListener(listener);
+    }
+
+    /**
+     * Adds a filter that all incoming packets have to pass, before they are deserialized, like a list of allowed senders.
+     * Filtered packets are dropped, also packets from work queues and replies.
+     * @param filter The filter
+     */
+    public synchronized void addHeaderFilter(HeaderFilter filter) {
+        HeaderFilter[] filters = Arrays.copyOf(headerFilters, headerFilters.length + 1);
+        filters[filters.length - 1] = filter;
+        headerFilters = filters;
+    }
+
+    /**
+     * Sets the filter of the listener of the given class, which is checked before the packet is deserialized.
+     * @param clazz The packet class, which needs to have a listener
+     * @param filter The filter, or null to remove it
+     */
+    public void setHeaderFilter(Class<? extends JedisJSONPacket> clazz, HeaderFilter filter) {
+        JedisJSONPacketListener<?> listener = jedisPacketHandler.getNewIncomingPacketHandler().getListener(packetRegistry.register(clazz).getName());
+        if (!(listener instanceof NewIncomingPacketListener)) throw new IllegalStateException("There is no listener of packet class " + clazz.getSimpleName());
+        ((NewIncomingPacketListener<?>) listener).setHeaderFilter(filter);
+    }
+
+    /**
+     * Compresses all packets of the given class that are at least 'threshold' bytes large after serialization.
+     * Compression is not applied in the {@link WireFormat#LEGACY_JSON} wire format, because older clients cannot read it.
+     * @param clazz The packet class
+     * @param threshold The size in bytes from which packets are compressed
+     */
+    public void enableCompression(Class<? extends JedisJSONPacket> clazz, int threshold) {
+        classCompressionThresholds.put(clazz, threshold);
+    }
+
+    /**
+     * Compresses all packets that are sent to the given target (a client or channel name),
+     * and that are at least 'threshold' bytes large after serialization.
+     * This threshold takes precedence over the threshold of the packet class.
+     * @param target The packet destination
+     * @param threshold The size in bytes from which packets are compressed
+     */
+    public void enableCompression(String target, int threshold) {
+        targetCompressionThresholds.put(target, threshold);
+    }
+
+    public void disableCompression(Class<? extends JedisJSONPacket> clazz) {
+        classCompressionThresholds.remove(clazz);
+    }
+
+    public void disableCompression(String target) {
+        targetCompressionThresholds.remove(target);
+    }
+
+    /**
+     * Sends all packets of the given class in the given lane, if priority lanes are enabled in the config.
+     * Packets in different lanes can overtake each other, so packets that must stay in order (like those of one conversation) should share a lane.
+     * @param clazz The packet class
+     * @param priority The lane
+     */
+    public void setPriority(Class<? extends JedisJSONPacket> clazz, Priority priority) {
+        classPriorities.put(clazz, priority);
+    }
+
+    /**
+     * Sends all packets to the given target (a client or channel name) in the given lane, if priority lanes are enabled in the config.
+     * This lane takes precedence over the lane of the packet class, but not over the lane of replies.
+     * @param target The packet destination
+     * @param priority The lane
+     */
+    public void setPriority(String target, Priority priority) {
+        targetPriorities.put(target, priority);
+    }
+
+    private Priority getPriority(Class<?> clazz, String target) {
+        if (!config.isPriorityLanes()) return Priority.NORMAL;
+        Priority priority = targetPriorities.get(target);
+        if (priority == null) priority = classPriorities.get(clazz);
+        return priority == null ? Priority.NORMAL : priority;
+    }
+
+    /**
+     * Requests in the normal lane may come from clients without priority lanes, which only receive the normal lane.
+     * Requests in another lane come from clients with priority lanes, so only these are replied to in the reply lane.
+     */
+    private Priority getReplyPriority(JedisJSONPacket request) {
+        return config.isPriorityLanes() && request.getReceivedPriority() != Priority.NORMAL ? config.getReplyPriority() : Priority.NORMAL;
+    }
+
+    /**
+     * This method sends the input packet to the given target in the following way:
+     * 1) A JedisJSON packet header is created for the packet
+     * 2) The header and the packet are serialized together into one envelope, in the wire format of this instance
+     * 3) The envelope is queued to be sent to the given 'target' destination via Jedis
+     * If the target is a client in this JVM, the packet is handed over directly instead.
+     * This method is thread safe. The packet is serialized on the calling thread, and published by a publisher thread.
+     * @param target The packet destination
+     * @param packet The packet
+     * @param packetID The unique ID of the packet
+     * @param codec The codec that should be used to serialize the packet
+     * @param <T> The packet type
+     * @return A future that completes with the amount of clients that received the packet
+     */
+    public <T extends JedisJSONPacket> CompletableFuture<Long> sendWithId(String target, T packet, String packetID, PacketCodec codec) {
+        return sendWithId(target, packet, packetID, codec, getPriority(packet.getClass(), target));
+    }
+
+    private CompletableFuture<Long> sendWithId(String target, JedisJSONPacket packet, String packetID, PacketCodec codec, Priority priority) {
+        if (deliverLocally(target, packet, packetID, codec, priority)) return CompletableFuture.completedFuture(1L);
+        Integer threshold = targetCompressionThresholds.get(target);
+        byte[] message = encode(packet, packetID, codec, threshold);
+        return publish(target, message, chunk(packet, message), metrics.getPacketMetrics(packet.getClass()), priority);
+    }
+
+    /**
+     * Serializes the packet once, and sends it to each of the given targets.
+     * Only the compression threshold of the packet class applies, not those of the targets.
+     * @param targets The packet destinations
+     * @param packet The packet
+     * @param packetID The unique ID of the packet
+     * @param codec The codec that should be used to serialize the packet
+     * @param <T> The packet type
+     * @return A future that completes with the total amount of clients that received the packet
+     */
+    public <T extends JedisJSONPacket> CompletableFuture<Long> sendWithId(Collection<String> targets, T packet, String packetID, PacketCodec codec) {
+        byte[] message = null;
+        List<byte[]> chunks = null;
+        TrafficMetrics packetMetrics = metrics.getPacketMetrics(packet.getClass());
+        CompletableFuture<Long> result = CompletableFuture.completedFuture(0L);
+        for (String target : targets) {
+            Priority priority = getPriority(packet.getClass(), target);
+            if (deliverLocally(target, packet, packetID, codec, priority)) {
+                result = result.thenApply(receivers -> receivers + 1);
+                continue;
+            }
+            if (message == null) {
+                message = encode(packet, packetID, codec, null);
+                chunks = chunk(packet, message);
+            }
+            result = result.thenCombine(publish(target, message, chunks, packetMetrics, priority), Long::sum);
+        }
+        return result;
+    }
+
+    /**
+     * Hands the packet over to the clients in this JVM that it is sent to.
+     * Packets to a channel are handed over to the local members of the channel, but still need to be published for the other members.
+     * @return Whether the target is a client in this JVM, so the packet does not need to be published
+     */
+    private boolean deliverLocally(String target, JedisJSONPacket packet, String packetID, PacketCodec codec, Priority priority) {
+        if (localTransport == null) return false;
+        JedisJSON localClient = localTransport.getClient(target);
+        if (localClient != null) {
+            localClient.getJedisPacketHandler().onLocalMessage(createLocalPacket(packet, packetID, codec, priority));
+            return true;
+        }
+
+        // Members only skip the Redis copies of packets of registered clients, so other clients must not hand over packets
+        if (localTransport.getClient(clientName) != this) return false;
+        LocalPacket localPacket = null;
+        for (JedisJSON member : localTransport.getChannelMembers(target)) {
+            if (member == this) continue;
+            if (localPacket == null) localPacket = createLocalPacket(packet, packetID, codec, priority);
+            member.getJedisPacketHandler().onLocalMessage(localPacket);
+        }
+        return false;
+    }
+
+    private LocalPacket createLocalPacket(JedisJSONPacket packet, String packetID, PacketCodec codec, Priority priority) {
+        packet.setId(packetID);
+        packet.setSource(clientName);
+        // A shared packet that was received before must not be taken for a request with its old body
+        packet.setReceivedBody(null);
+        // The packet is looked up by name, because the type IDs of the receiver may be registered differently
+        JedisJSONPacketHeader header = new JedisJSONPacketHeader(packetID, clientName, packetRegistry.register(packet.getClass()).getName(), 0, packet.getAttributes());
+        byte[] data = config.getLocalDeliveryMode() == LocalDeliveryMode.COPY ? codec.encode(packet) : null;
+        LocalPacket localPacket = new LocalPacket(header, data == null ? packet : null, data, codec, priority);
+        metrics.getPacketMetrics(packet.getClass()).onSent(localPacket.getLength());
+        TrafficMetrics laneMetrics = metrics.getLaneMetrics(priority);
+        if (laneMetrics != null) laneMetrics.onSent(localPacket.getLength());
+        return localPacket;
+    }
+
+    /**
+     * Splits the envelope into chunks if it is larger than the maximum message size.
+     * @return The chunks, or null if the envelope is published in one message
+     */
+    private List<byte[]> chunk(JedisJSONPacket packet, byte[] message) {
+        int maxChunkBytes = config.getMaxChunkBytes();
+        if (maxChunkBytes <= 0 || message.length <= maxChunkBytes) return null;
+        String transferId = clientName + ":" + transferCounter.incrementAndGet();
+        return PacketChunk.split(transferId, packetRegistry.register(packet.getClass()).getName(), message, maxChunkBytes);
+    }
+
+    /**
+     * @param chunks The chunks of the envelope, or null to publish the envelope in one message
+     * @param priority The lane, which is published on a Redis channel of its own
+     * @return A future that completes with the amount of clients that received the envelope, or its last chunk
+     */
+    private CompletableFuture<Long> publish(String target, byte[] message, List<byte[]> chunks, TrafficMetrics packetMetrics, Priority priority) {
+        packetMetrics.onSent(message.length);
+        TrafficMetrics channelMetrics = metrics.getChannelMetrics(target);
+        if (channelMetrics != null) channelMetrics.onSent(message.length);
+        TrafficMetrics laneMetrics = metrics.getLaneMetrics(priority);
+        if (laneMetrics != null) laneMetrics.onSent(message.length);
+        byte[] encodedTarget = SafeEncoder.encode(priority.channel(target));
+        if (chunks == null) return publisher.publish(encodedTarget, message, priority);
+
+        // The chunks go through the same publisher thread, so they are published in order, between the packets of other targets
+        CompletableFuture<Long> result = null;
+        for (byte[] chunk : chunks) {
+            CompletableFuture<Long> published = publisher.publish(encodedTarget, chunk, priority);
+            result = result == null ? published : result.thenCombine(published, (previous, receivers) -> receivers);
+        }
+        return result;
+    }
+
+    /**
+     * Adds the packet to the stream of the given work queue, in the wire format of this instance.
+     * @param queue The name of the work queue
+     * @param packet The packet
+     * @param codec The codec that should be used to serialize the packet
+     * @param maxLength The length to which the stream is trimmed (approximately), or 0 to never trim it
+     * @param <T> The packet type
+     * @return A future that completes with the ID of the stream entry
+     */
+    public <T extends JedisJSONPacket> CompletableFuture<String> sendToQueue(String queue, T packet, PacketCodec codec, long maxLength) {
+        byte[] message = encode(packet, idGenerator.nextId(), codec, targetCompressionThresholds.get(queue));
+        metrics.getPacketMetrics(packet.getClass()).onSent(message.length);
+        return publisher.append(SafeEncoder.encode(queue), message, maxLength <= 0 ? Long.MAX_VALUE : maxLength);
+    }
+
+    /**
+     * Starts a consumer of the work queue in the given consumer group, that passes the packets to the listener.
+     * @param queue The name of the work queue
+     * @param group The name of the consumer group
+     * @param listener The listener
+     */
+    public void consumeQueue(String queue, String group, JedisJSONPacketListener<?> listener) {
+        StreamConsumer consumer = new StreamConsumer(this, host, port, queue, group, listener);
+        streamConsumers.add(consumer);
+        consumer.start();
+    }
+
+    private byte[] encode(JedisJSONPacket packet, String packetID, PacketCodec codec, Integer compressionThreshold) {
+        packet.setId(packetID);
+        packet.setSource(clientName);
+        packet.setReceivedBody(null);
+        PacketType type = packetRegistry.register(packet.getClass());
+        JedisJSONPacketHeader header = new JedisJSONPacketHeader(packetID, clientName, type.getName(), type.getId(), packet.getAttributes());
+        if (compressionThreshold == null) compressionThreshold = classCompressionThresholds.get(packet.getClass());
+        PacketCompressor packetCompressor = compressionThreshold == null ? null : compressor;
+        int threshold = compressionThreshold == null ? Integer.MAX_VALUE : compressionThreshold;
+        switch (wireFormat) {
+            case BINARY:
+                return BinaryPacketEnvelope.write(header, packet, codec, packetCompressor, threshold);
+            case LEGACY_JSON:
+                return JedisJSONPacketEnvelope.write(header, packet, codec, true, null, threshold);
+            default:
+                return JedisJSONPacketEnvelope.write(header, packet, codec, false, packetCompressor, threshold);
+        }
+    }
+
+    public <T extends JedisJSONPacket> CompletableFuture<Long> sendWithId(String target, T packet, String packetID, Gson gson) {
+        return sendWithId(target, packet, packetID, new GsonPacketCodec(gson));
+    }
+
+    public <T extends JedisJSONPacket> CompletableFuture<Long> send(String target, T packet) {
+        return sendWithId(target, packet, idGenerator.nextId(), getCodec(packet.getClass()));
+    }
+
+    public <T extends JedisJSONPacket> CompletableFuture<Long> send(String target, T packet, Gson gson) {
+        return sendWithId(target, packet, idGenerator.nextId(), gson);
+    }
+
+    public <T extends JedisJSONPacket> void sendWithReply(String target, T packet, Consumer<T> replyConsumer) {
+        sendWithReply(target, packet, replyConsumer, SingleResponseListener.DEFAULT_SINGLE_RESPONSE_TIMEOUT, null, getCodec(packet.getClass()));
+    }
+
+    public <T extends JedisJSONPacket> void sendWithReply(String target, T packet, Consumer<T> replyConsumer, Gson gson) {
+        sendWithReply(target, packet, replyConsumer, SingleResponseListener.DEFAULT_SINGLE_RESPONSE_TIMEOUT, gson);
+    }
+
+    public <T extends JedisJSONPacket> void sendWithReply(String target, T packet, Consumer<T> replyConsumer, int timeout) {
+        sendWithReply(target, packet, replyConsumer, timeout, null, getCodec(packet.getClass()));
+    }
+
+    public <T extends JedisJSONPacket> void sendWithReply(String target, T packet, Consumer<T> replyConsumer, int timeout, Gson gson) {
+        sendWithReply(target, packet, replyConsumer, timeout, null, new GsonPacketCodec(gson));
+    }
+
+    /**
+     * Sends the packet to the given target, and waits for a reply.
+     * @param target The packet destination
+     * @param packet The packet
+     * @param replyConsumer The consumer that is called with the reply
+     * @param timeout The time in milliseconds to wait for the reply, or Integer.MAX_VALUE to wait forever
+     * @param timeoutHandler The handler that is called if no reply was received within the timeout
+     * @param <T> The packet type
+     */
+    public <T extends JedisJSONPacket> void sendWithReply(String target, T packet, Consumer<T> replyConsumer, int timeout, Runnable timeoutHandler) {
+        sendWithReply(target, packet, replyConsumer, timeout, timeoutHandler, getCodec(packet.getClass()));
+    }
+
+    private <T extends JedisJSONPacket> void sendWithReply(String target, T packet, Consumer<T> replyConsumer, int timeout, Runnable timeoutHandler, PacketCodec codec) {
+        // The listener is registered before sending, so the reply cannot arrive before its listener
+        String packetID = idGenerator.nextId();
+        SingleResponseListener<T> listener = new SingleResponseListener<>(this, codec, packet.getClass(), packetID, replyConsumer, timeout, timeoutHandler);
+        jedisPacketHandler.registerListener(packetID, listener, false);
+        sendWithId(target, packet, packetID, codec);
+    }
+
+    public <T extends JedisJSONPacket> void onReceive(Class<T> clazz, Consumer<T> consumer) {
+        onReceive(clazz, consumer, getCodec(clazz));
+    }
+
+    public <T extends JedisJSONPacket> void onReceive(Class<T> clazz, Consumer<T> consumer, Gson gson) {
+        onReceive(clazz, consumer, new GsonPacketCodec(gson));
+    }
+
+    private <T extends JedisJSONPacket> void onReceive(Class<T> clazz, Consumer<T> consumer, PacketCodec codec) {
+        jedisPacketHandler.getNewIncomingPacketHandler().registerNewIncomingPacketListener(packetRegistry.register(clazz), createListener(clazz, consumer, codec));
+    }
+
+    public <T extends JedisJSONPacket, R extends JedisJSONPacket> void onReceive(Class<T> clazz, Function<T, R> function) {
+        onReceive(clazz, function, getCodec(clazz), null);
+    }
+
+    public <T extends JedisJSONPacket, R extends JedisJSONPacket> void onReceive(Class<T> clazz, Function<T, R> function, Gson gson) {
+        PacketCodec codec = new GsonPacketCodec(gson);
+        onReceive(clazz, function, codec, codec);
+    }
+
+    /**
+     * Registers a listener that replies to incoming packets with the result of the function.
+     * If the function returns null, no reply is sent.
+     * @param replyCodec The codec that should be used to serialize the reply, or null to use the codec of the reply class
+     */
+    private <T extends JedisJSONPacket, R extends JedisJSONPacket> void onReceive(Class<T> clazz, Function<T, R> function, PacketCodec codec, PacketCodec replyCodec) {
+        NewIncomingPacketListener<T> listener = createListener(clazz, packet -> {
+            ResponseCache cache = responseCaches.get(clazz);
+            if (cache != null) {
+                replyCached(cache, packet, function, replyCodec);
+                return;
+            }
+            R response = function.apply(packet);
+            if (response == null) return;
+            sendWithId(packet.getSource(), response, packet.getId(), replyCodec == null ? getCodec(response.getClass()) : replyCodec, getReplyPriority(packet));
+        }, new RequestBodyCodec(codec, () -> responseCaches.containsKey(clazz)));
+        jedisPacketHandler.getNewIncomingPacketHandler().registerNewIncomingPacketListener(packetRegistry.register(clazz), listener);
+    }
+
+    /**
+     * Replies with the cached reply to the same request, or runs the function and caches its reply.
+     * Replies of null are not cached, so the function runs again for the next same request.
+     * The request is looked up by its body as it was received. Only shared local packets have no such body, so these are serialized again.
+     */
+    private <T extends JedisJSONPacket, R extends JedisJSONPacket> void replyCached(ResponseCache cache, T packet, Function<T, R> function, PacketCodec replyCodec) {
+        byte[] request = packet.getReceivedBody() != null ? packet.getReceivedBody() : getCodec(packet.getClass()).encode(packet);
+        CachedResponse cached = cache.get(request);
+        if (cached != null) {
+            metrics.onResponseCacheHit();
+        } else {
+            metrics.onResponseCacheMiss();
+            R response = function.apply(packet);
+            if (response == null) return;
+            cached = cache.put(request, response, replyCodec == null ? getCodec(response.getClass()) : replyCodec);
+        }
+        // A shared local packet is the object itself, which the receiver changes, so it gets a copy of the reply
+        JedisJSONPacket reply = isSharedLocally(packet.getSource()) ? cached.copy() : cached.getResponse();
+        sendWithId(packet.getSource(), reply, packet.getId(), cached.getCodec(), getReplyPriority(packet));
+    }
+
+    private boolean isSharedLocally(String target) {
+        return localTransport != null && config.getLocalDeliveryMode() == LocalDeliveryMode.SHARE && localTransport.getClient(target) != null;
+    }
+
+    /**
+     * Creates the listener of an {@code onReceive} consumer, that runs the consumer on a virtual thread per packet if that is enabled.
+     */
+    private <T extends JedisJSONPacket> NewIncomingPacketListener<T> createListener(Class<T> clazz, Consumer<T> consumer, PacketCodec codec) {
+        if (!config.isVirtualThreadListeners() || !VirtualThreads.isSupported()) return new NewIncomingPacketListener<>(codec, clazz, consumer);
+        return new NewIncomingPacketListener<>(codec, clazz, packet -> VirtualThreads.start(() -> consumer.accept(packet)), false);
+    }
+
+    /**
+     * Caches the replies of the {@link #onReceive(Class, Function)} listener of the given class, like the method below,
+     * and removes the least recently used reply when the cache is full.
+     */
+    public void enableResponseCache(Class<? extends JedisJSONPacket> clazz, int maxEntries, long ttlMillis) {
+        enableResponseCache(clazz, maxEntries, ttlMillis, CacheEviction.LRU);
+    }
+
+    /**
+     * Caches the replies of the {@link #onReceive(Class, Function)} listener of the given class, by the body of the request.
+     * A request with the same body as an earlier request gets the same reply, without running the listener again,
+     * and without serializing the reply again. Only use this for listeners whose reply depends on nothing but the request body.
+     * Cached replies are shared between the requests, and must not be modified.
+     * @param clazz The request class
+     * @param maxEntries The maximum amount of cached replies
+     * @param ttlMillis The time in milliseconds after which a reply is no longer used, or 0 to keep replies until they are evicted
+     * @param eviction Which reply is removed when the cache is full
+     */
+    public void enableResponseCache(Class<? extends JedisJSONPacket> clazz, int maxEntries, long ttlMillis, CacheEviction eviction) {
+        responseCaches.put(clazz, new ResponseCache(maxEntries, ttlMillis, eviction));
+    }
+
+    public void disableResponseCache(Class<? extends JedisJSONPacket> clazz) {
+        responseCaches.remove(clazz);
+    }
+
+    /**
+     * Removes all cached replies of the given request class, for example because the data they were computed from changed.
+     * @param clazz The request class
+     */
+    public void invalidateResponseCache(Class<? extends JedisJSONPacket> clazz) {
+        ResponseCache cache = responseCaches.get(clazz);
+        if (cache != null) cache.invalidate();
+    }
+
+    /**
+     * Removes the cached reply to the given request.
+     * @param clazz The request class
+     * @param request A request with the same body as the request whose reply should be removed
+     * @param <T> The request type
+     */
+    public <T extends JedisJSONPacket> void invalidateResponseCache(Class<T> clazz, T request) {
+        ResponseCache cache = responseCaches.get(clazz);
+        if (cache != null) cache.invalidate(getCodec(clazz).encode(request));
+    }
+
+    /**
+     * Registers a consumer that reads the incoming packets of the given class as JSON, instead of deserialized into the class.
+     * This is meant for packets that are too large to hold in memory as a whole, like large snapshots.
+     * Packets that are sent in chunks (see {@link JedisJSONConfig#setMaxChunkBytes(int)}) are handed to the consumer
+     * as soon as their first chunk arrives, on a thread of their own, and the reader waits for the next chunk when it needs it.
+     * Only {@link JedisJSONConfig#setMaxChunkStreams(int)} packets are streamed at once, further packets are handed over once they are complete.
+     * The packet must be serialized with a JSON codec by the sender.
+     * @param clazz The packet class
+     * @param consumer The consumer of the packets
+     * @param <T> The packet type
+     */
+    public <T extends JedisJSONPacket> void onReceiveStream(Class<T> clazz, PacketStreamConsumer consumer) {
+        PacketStreamListener listener = new PacketStreamListener(clazz, getCodec(clazz), consumer);
+        jedisPacketHandler.getNewIncomingPacketHandler().registerNewIncomingPacketListener(packetRegistry.register(clazz), listener);
+    }
+
+    public <T extends JedisJSONPacket, R extends JedisJSONPacket> CompletableFuture<R> request(String target, T packet, Class<R> responseType) {
+        return request(target, packet, responseType, SingleResponseListener.DEFAULT_SINGLE_RESPONSE_TIMEOUT);
+    }
+
+    /**
+     * Sends the packet to the given target, and returns a future of the reply.
+     * The target should reply with a listener that is registered with {@link #onReceive(Class, Function)}.
+     * If no reply is received within the timeout, the future completes exceptionally with a {@link TimeoutException}.
+     * Cancelling the future stops waiting for the reply.
+     * @param target The packet destination
+     * @param packet The packet
+     * @param responseType The class of the reply
+     * @param timeout The time in milliseconds to wait for the reply, or Integer.MAX_VALUE to wait forever
+     * @param <T> The packet type
+     * @param <R> The reply type
+     * @return A future that completes with the reply
+     */
+    public <T extends JedisJSONPacket, R extends JedisJSONPacket> CompletableFuture<R> request(String target, T packet, Class<R> responseType, int timeout) {
+        packetRegistry.register(responseType);
+        CompletableFuture<R> future = new CompletableFuture<>();
+        String packetID = idGenerator.nextId();
+        SingleResponseListener<R> listener = new SingleResponseListener<>(this, getCodec(responseType), responseType, packetID, future::complete, timeout,
+                () -> future.completeExceptionally(new TimeoutException("No reply from " + target + " within " + timeout + " ms")));
+        jedisPacketHandler.registerListener(packetID, listener, false);
+        future.whenComplete((response, throwable) -> {
+            if (future.isCancelled()) listener.cancel();
+        });
+
+        sendWithId(target, packet, packetID, getCodec(packet.getClass())).whenComplete((receivers, throwable) -> {
+            if (throwable != null && listener.cancel()) future.completeExceptionally(throwable);
+        });
+        return future;
+    }
+
+    public <T extends JedisJSONPacket, R extends JedisJSONPacket> R call(String target, T packet, Class<R> responseType) throws TimeoutException, InterruptedException {
+        return call(target, packet, responseType, SingleResponseListener.DEFAULT_SINGLE_RESPONSE_TIMEOUT);
+    }
+
+    /**
+     * Sends the packet to the given target, and waits for the reply.
+     * The calling thread is parked while it waits, so on a virtual thread, waiting does not hold up a platform thread.
+     * @param target The packet destination
+     * @param packet The packet
+     * @param responseType The class of the reply
+     * @param timeout The time in milliseconds to wait for the reply, or Integer.MAX_VALUE to wait forever
+     * @param <T> The packet type
+     * @param <R> The reply type
+     * @return The reply
+     * @throws TimeoutException If no reply is received within the timeout
+     * @throws InterruptedException If the thread is interrupted while it waits, in which case the reply is no longer awaited
+     */
+    public <T extends JedisJSONPacket, R extends JedisJSONPacket> R call(String target, T packet, Class<R> responseType, int timeout) throws TimeoutException, InterruptedException {
+        CompletableFuture<R> future = request(target, packet, responseType, timeout);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            throw e;
+        } catch (ExecutionException e) {
+            // The future fails with the timeout, or with the failure to publish the packet
+            Throwable cause = e.getCause();
+            if (cause instanceof TimeoutException) throw (TimeoutException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new CompletionException(cause);
+        }
+    }
+
+    public <T extends JedisJSONPacket, R extends JedisJSONPacket> CompletableFuture<Map<String, R>> requestAll(Collection<String> targets, T packet, Class<R> responseType) {
+        return requestAll(targets, packet, responseType, targets.size(), SingleResponseListener.DEFAULT_SINGLE_RESPONSE_TIMEOUT);
+    }
+
+    /**
+     * Sends the packet to all given targets, and collects their replies.
+     * The packet is serialized once, and all targets reply to the same packet ID.
+     * The future completes as soon as 'quorum' replies are received, or when the timeout passes, with the replies that were received until then.
+     * @param targets The packet destinations
+     * @param packet The packet
+     * @param responseType The class of the replies
+     * @param quorum The amount of replies after which the future completes
+     * @param timeout The time in milliseconds to wait for the replies
+     * @param <T> The packet type
+     * @param <R> The reply type
+     * @return A future that completes with the replies, by the client name of the target that sent them
+     */
+    public <T extends JedisJSONPacket, R extends JedisJSONPacket> CompletableFuture<Map<String, R>> requestAll(Collection<String> targets, T packet, Class<R> responseType, int quorum, int timeout) {
+        packetRegistry.register(responseType);
+        String packetID = idGenerator.nextId();
+        MultiResponseListener<R> listener = new MultiResponseListener<>(this, getCodec(responseType), responseType, packetID, targets, quorum, timeout);
+        if (listener.getFuture().isDone()) return listener.getFuture();
+        jedisPacketHandler.registerListener(packetID, listener, false);
+        sendWithId(targets, packet, packetID, getCodec(packet.getClass())).whenComplete((receivers, throwable) -> {
+            if (throwable != null) listener.fail(throwable);
+        });
+        return listener.getFuture();
+    }
+
+    public <T extends JedisJSONPacket> Conversation<T> createConversation(Class<T> clazz, String target) {
+        return createConversation(clazz, target, Integer.MAX_VALUE, getCodec(clazz));
+    }
+
+    public <T extends JedisJSONPacket> Conversation<T> createConversation(Class<T> clazz, String target, int initialState) {
+        return createConversation(clazz, target, initialState, getCodec(clazz));
+    }
+
+    public <T extends JedisJSONPacket> Conversation<T> createConversation(Class<T> clazz, String target, Gson gson) {
+        return createConversation(clazz, target, Integer.MAX_VALUE, gson);
+    }
+
+    public <T extends JedisJSONPacket> Conversation<T> createConversation(Class<T> clazz, String target, int initialState, Gson gson) {
+        return createConversation(clazz, target, initialState, new GsonPacketCodec(gson));
+    }
+
+    private <T extends JedisJSONPacket> Conversation<T> createConversation(Class<T> clazz, String target, int initialState, PacketCodec codec) {
+        packetRegistry.register(clazz);
+        String conversationID = idGenerator.nextId();
+        Conversation<T> conversation = new Conversation<>(this, codec, clazz, target, conversationID, true, initialState);
+        jedisPacketHandler.registerListener(conversationID, conversation, false);
+        if (config.getConversationIdleTimeoutMillis() > 0) conversation.setIdleTimeout(config.getConversationIdleTimeoutMillis(), null);
+        return conversation;
+    }
+
+    public <T extends JedisJSONPacket> void acceptConversation(Class<T> clazz, Consumer<Conversation<T>> consumer) {
+        acceptConversation(clazz, getCodec(clazz), Integer.MAX_VALUE, consumer);
+    }
+
+    public <T extends JedisJSONPacket> void acceptConversation(Class<T> clazz, int initialState, Consumer<Conversation<T>> consumer) {
+        acceptConversation(clazz, getCodec(clazz), initialState, consumer);
+    }
+
+    public <T extends JedisJSONPacket> void acceptConversation(Class<T> clazz, Gson gson, Consumer<Conversation<T>> consumer) {
+        acceptConversation(clazz, gson, Integer.MAX_VALUE, consumer);
+    }
+
+    public <T extends JedisJSONPacket> void acceptConversation(Class<T> clazz, Gson gson, int initialState, Consumer<Conversation<T>> consumer) {
+        acceptConversation(clazz, new GsonPacketCodec(gson), initialState, consumer);
+    }
+
+    private <T extends JedisJSONPacket> void acceptConversation(Class<T> clazz, PacketCodec codec, int initialState, Consumer<Conversation<T>> consumer) {
+        packetRegistry.register(clazz);
+        conversationHandler.acceptConversation(new Conversation.ConversationData<>(clazz, codec, initialState, consumer));
+    }
+
+    public <T extends JedisJSONPacket> Channel<T> enterChannel(String name, Class<T> clazz) {
+        return enterChannel(name, clazz, getCodec(clazz));
+    }
+
+    public <T extends JedisJSONPacket> Channel<T> enterChannel(String name, Class<T> clazz, Gson gson) {
+        return enterChannel(name, clazz, new GsonPacketCodec(gson));
+    }
+
+    private <T extends JedisJSONPacket> Channel<T> enterChannel(String name, Class<T> clazz, PacketCodec codec) {
+        packetRegistry.register(clazz);
+        metrics.createChannelMetrics(name);
+        Channel<T> channel = new Channel<T>(this, codec, clazz, name);
+        jedisPacketHandler.registerListener(name, channel, true);
+        if (localTransport != null) localTransport.joinChannel(name, this);
+        return channel;
+    }
+
+    public <T extends JedisJSONPacket> WorkQueue<T> workQueue(String name, Class<T> clazz) {
+        return workQueue(name, clazz, getCodec(clazz));
+    }
+
+    public <T extends JedisJSONPacket> WorkQueue<T> workQueue(String name, Class<T> clazz, Gson gson) {
+        return workQueue(name, clazz, new GsonPacketCodec(gson));
+    }
+
+    private <T extends JedisJSONPacket> WorkQueue<T> workQueue(String name, Class<T> clazz, PacketCodec codec) {
+        packetRegistry.register(clazz);
+        return new WorkQueue<>(this, codec, clazz, name, config.getStreamMaxLength());
+    }
+
+    /**
+     * Adds this client to the service group with the given name, so that clients that send requests to the group send some of them to this client.
+     * The requests are handled by the listeners that are registered with {@link #onReceive(Class, Function)}.
+     * The membership is renewed at the heartbeat interval, until this client leaves the group or shuts down.
+     * @param group The name of the service group
+     */
+    public void joinServiceGroup(String group) {
+        getServiceRegistry().join(group);
+    }
+
+    public void leaveServiceGroup(String group) {
+        getServiceRegistry().leave(group);
+    }
+
+    /**
+     * Returns the service group with the given name, to send requests to its instances.
+     * The members of the group are read at once, and then at the heartbeat interval.
+     * @param group The name of the service group
+     * @return The service group
+     */
+    public ServiceGroup serviceGroup(String group) {
+        return getServiceRegistry().getGroup(group);
+    }
+
+    /**
+     * Runs the task on the dispatcher thread of the given key, so it is not run at the same time as the packets with that key.
+     * Without dispatcher threads, the task runs on the thread of local packets, or on a thread of its own.
+     * This never blocks, so it can be called from the timeout scheduler.
+     * @param key The stripe key, like a channel name
+     * @param task The task
+     */
+    public void execute(String key, Runnable task) {
+        PacketDispatcher dispatcher = this.dispatcher != null ? this.dispatcher : localDispatcher != null ? localDispatcher : getTaskDispatcher();
+        dispatcher.execute(key, task);
+    }
+
+    private synchronized PacketDispatcher getTaskDispatcher() {
+        if (taskDispatcher == null) taskDispatcher = new PacketDispatcher(1);
+        return taskDispatcher;
+    }
+
+    private synchronized ServiceRegistry getServiceRegistry() {
+        if (serviceRegistry == null) {
+            serviceRegistry = new ServiceRegistry(this, jedisPool);
+            serviceRegistry.start();
+        }
+        return serviceRegistry;
+    }
+}
@@ -0,0 +1,227 @@
+package nl.itslars.jedisjson;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import nl.itslars.jedisjson.dispatch.OverloadPolicy;
+import nl.itslars.jedisjson.dispatch.Priority;
+import nl.itslars.jedisjson.service.LoadBalancing;
+import nl.itslars.jedisjson.transport.LocalDeliveryMode;
+
+/**
+ * The settings of a JedisJSON instance, that have to be known when the instance is created.
+ */
+@Getter
+@Setter
+@Accessors(chain = true)
+public class JedisJSONConfig {
+
+    // Publishing
+    /**
+     * The amount of publisher threads. Each thread has its own Redis connection.
+     * Packets to the same target are always published by the same thread, so they stay in order.
+     */
+    private int publisherThreads = 1;
+    /**
+     * The maximum amount of packets that can wait to be published, per publisher thread.
+     * When the queue is full, sending blocks until there is space again.
+     */
+    private int publishQueueCapacity = 10000;
+    /**
+     * The maximum amount of packets that are published in one pipelined round trip.
+     */
+    private int maxPublishBatch = 256;
+    /**
+     * The time in microseconds that a publisher thread waits for more packets, before it publishes a batch that is not full.
+     * With the default value of 0, everything that is queued is published immediately.
+     */
+    private long publishLingerMicros = 0;
+    /**
+     * The maximum total size in bytes of the packets that are bundled into one message, or 0 to never bundle packets.
+     * Packets to the same target that are published in the same batch are sent as one message, which saves Redis a lot of work for small packets.
+     * Clients of older versions can not read bundles, so only enable this when all clients have been upgraded.
+     * Use a linger time to give the publisher threads more packets to bundle.
+     */
+    private int maxBundleBytes = 0;
+
+    // Chunking
+    /**
+     * The maximum size in bytes of one published message, or 0 to publish every packet in one message.
+     * Larger packets are split into chunks of this size, so a huge packet does not block Redis and the other clients for a long time.
+     * Clients of older versions can not read chunks, so only enable this when all clients have been upgraded.
+     */
+    private int maxChunkBytes = 0;
+    /**
+     * The maximum amount of bytes of chunked packets that this client buffers at once.
+     * A chunked packet that does not fit is dropped, and a streamed packet that is not read fast enough is aborted.
+     */
+    private long maxChunkBufferBytes = 64 * 1024 * 1024;
+    /**
+     * The time in milliseconds after which a chunked packet is dropped, when its next chunk does not arrive.
+     */
+    private long chunkTimeoutMillis = 30000;
+    /**
+     * The maximum amount of chunked packets that are streamed to {@code onReceiveStream} consumers at once, each on a thread of its own.
+     * Further packets are buffered, and handed to their consumer once they are complete. The threads are virtual threads if those are enabled.
+     */
+    private int maxChunkStreams = 16;
+
+    // Local delivery
+    /**
+     * Whether packets to clients in the same JVM, that use the same Redis host and port, are handed over directly instead of through Redis.
+     * Channel packets are still published to Redis for the clients in other JVMs.
+     * Local packets are handled by the dispatcher threads, or by a separate thread if there are no dispatcher threads.
+     */
+    private boolean localDelivery = true;
+    /**
+     * Whether the packets that this instance hands over directly are copied or shared with the receivers.
+     */
+    private LocalDeliveryMode localDeliveryMode = LocalDeliveryMode.COPY;
+
+    // Subscribing
+    /**
+     * The amount of subscription connections, each with its own reader thread.
+     * The client channel and the named channels are divided over the connections by the hash of their name,
+     * so the packets of a channel always arrive on the same connection, in order.
+     * Without dispatcher threads, packets of channels on different connections are handled at the same time.
+     */
+    private int subscriptionConnections = 1;
+
+    // Dispatching
+    /**
+     * The amount of dispatcher threads that decode incoming packets and run the listeners.
+     * Packets with the same packet ID, conversation ID or channel name are always handled by the same thread, in order.
+     * With the default value of 0, packets are handled on the subscription thread itself.
+     */
+    private int dispatcherThreads = 0;
+    /**
+     * Whether every packet for a listener that is registered with {@code onReceive} is handled on a virtual thread of its own.
+     * Listeners can then block, for example on {@code call}, without holding up other packets. Packets are no longer handled in order.
+     * Virtual threads need Java 21 or higher. On older versions, this setting is ignored.
+     */
+    private boolean virtualThreadListeners = false;
+    /**
+     * The maximum amount of packets that can wait to be handled, per dispatcher thread.
+     * When the queue is full, packets with the BLOCK overload policy make the subscription thread wait until there is space again.
+     * Redis disconnects subscribers that fall too far behind, so other packets should be shed before that happens.
+     * Packets that listeners send to clients in this JVM, like replies, never wait, and may exceed the capacity:
+     * a dispatcher thread that waits for space could wait for itself.
+     */
+    private int dispatchQueueCapacity = 100000;
+    /**
+     * The amount of queued packets from which a dispatcher thread is overloaded, and packets are shed according to their overload policy.
+     */
+    private int dispatchHighWatermark = 50000;
+    /**
+     * The amount of queued packets below which an overloaded dispatcher thread has recovered.
+     */
+    private int dispatchLowWatermark = 10000;
+    /**
+     * The overload policy of packet classes that have no policy of their own.
+     */
+    private OverloadPolicy defaultOverloadPolicy = OverloadPolicy.BLOCK;
+
+    // Priority lanes
+    /**
+     * Whether packets are sent and handled in the {@link Priority} lane of their class or target, instead of all in one lane.
+     * Every lane of a channel is a Redis channel of its own, and the high lanes are received on an extra subscription connection,
+     * so control packets do not wait behind bulk packets. Clients of older versions only receive the normal lane,
+     * so only enable this when all clients have been upgraded.
+     */
+    private boolean priorityLanes = false;
+    /**
+     * The lane of the replies of {@code onReceive} functions, so replies arrive before their requests time out while the client is busy.
+     * Only requests that arrived in a priority lane are replied to in this lane. Requests in the normal lane may come from clients
+     * without priority lanes, so these are replied to in the normal lane.
+     */
+    private Priority replyPriority = Priority.HIGH;
+
+    // Timeouts
+    /**
+     * The duration in milliseconds of one tick of the timeout scheduler.
+     * Reply and conversation timeouts may fire up to one tick late.
+     */
+    private long timeoutTickMillis = 10;
+    /**
+     * The amount of buckets of the timeout scheduler. Timeouts within (tick * buckets) milliseconds are handled in one round.
+     */
+    private int timeoutWheelSize = 512;
+
+    // Conversations
+    /**
+     * The time in milliseconds after which conversations in which no packet was sent or received are closed, or 0 to keep them open.
+     * This removes the conversations of clients that stopped. It can be overridden per conversation with {@code setIdleTimeout}.
+     */
+    private int conversationIdleTimeoutMillis = 0;
+
+    // Work queues
+    /**
+     * The maximum amount of entries that a work queue consumer reads in one XREADGROUP call, and acknowledges in one XACK call.
+     */
+    private int streamBatchSize = 64;
+    /**
+     * The time in milliseconds that a work queue consumer waits for new entries in one read.
+     * Shutting down waits up to this long for the consumers to finish their read.
+     */
+    private long streamBlockMillis = 1000;
+    /**
+     * The length to which work queue streams are trimmed (approximately) when a packet is added, or 0 to never trim them.
+     * Handled entries stay in the stream until it is trimmed, but entries that are not handled yet are trimmed as well
+     * when the consumers fall behind by more than this length.
+     */
+    private long streamMaxLength = 100000;
+    /**
+     * The time in milliseconds that an entry must be pending, before another consumer of the group claims it.
+     * This is the time after which the entries of a consumer that stopped are handled by another consumer.
+     */
+    private long streamClaimIdleMillis = 30000;
+    /**
+     * The interval in milliseconds at which work queue consumers look for pending entries to claim.
+     */
+    private long streamClaimIntervalMillis = 5000;
+    /**
+     * The amount of deliveries after which an entry that is still pending is dropped, instead of claimed again.
+     * With the default value of 0, entries are delivered until they are handled.
+     */
+    private int streamMaxDeliveries = 0;
+
+    // Service groups
+    /**
+     * The interval in milliseconds at which this client renews its service group memberships, and reads the members of the groups that it sends requests to.
+     */
+    private long serviceHeartbeatMillis = 1000;
+    /**
+     * The time in milliseconds after its last heartbeat, after which a member of a service group is removed from the group.
+     * This should be a few times the heartbeat interval, so that a late heartbeat does not remove a member.
+     */
+    private long serviceTtlMillis = 5000;
+    /**
+     * How service groups pick the instance that a request is sent to. This can be changed per group.
+     */
+    private LoadBalancing serviceLoadBalancing = LoadBalancing.LEAST_OUTSTANDING;
+    /**
+     * The maximum amount of instances that a service group request is sent to, when the earlier instances do not reply in time.
+     */
+    private int serviceMaxAttempts = 3;
+    /**
+     * The amount of retries that service group requests may do, as ratio of the requests to the group.
+     * Every request adds this ratio to the retry budget of the group, and every retry takes one from it.
+     */
+    private double serviceRetryRatio = 0.1;
+    /**
+     * The amount of retries with which the retry budget of a service group starts, and which it can hold at most.
+     */
+    private int serviceRetryReserve = 10;
+
+    // Metrics
+    /**
+     * One in every 'metricsSampleInterval' incoming packets is timed. Packets are always counted.
+     * Set this to 1 to time every packet.
+     */
+    private int metricsSampleInterval = 16;
+    /**
+     * Whether the metrics are registered as MXBeans, in the 'nl.itslars.jedisjson' JMX domain.
+     */
+    private boolean jmxEnabled = true;
+
+}
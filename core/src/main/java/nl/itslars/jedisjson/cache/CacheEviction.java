@@ -0,0 +1,18 @@
+package nl.itslars.jedisjson.cache;
+
+/**
+ * Which reply a full response cache removes to make room for a new one.
+ */
+public enum CacheEviction {
+
+    /**
+     * Removes the reply that was used least recently.
+     */
+    LRU,
+    /**
+     * Removes the reply that was used least often, of the few replies that were used least recently.
+     * Like in Redis, this is an approximation that does not need to keep the replies sorted by their use.
+     */
+    LFU
+
+}
@@ -0,0 +1,32 @@
+package nl.itslars.jedisjson.cache;
+
+import lombok.Getter;
+import nl.itslars.jedisjson.codec.PacketCodec;
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+
+/**
+ * A reply in a response cache, with the codec that writes it as it was serialized when it was cached.
+ * The reply is sent to every client that asks the same question, so it must not be modified.
+ */
+@Getter
+public class CachedResponse {
+
+    private JedisJSONPacket response;
+    private PacketCodec codec;
+    private long expiresAt;
+    int hits;
+
+    CachedResponse(JedisJSONPacket response, PacketCodec codec, long expiresAt) {
+        this.response = response;
+        this.codec = codec;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * @return A copy of the reply, for a receiver that would otherwise get the cached object itself
+     */
+    public JedisJSONPacket copy() {
+        byte[] data = codec.encode(response);
+        return codec.decode(data, 0, data.length, response.getClass());
+    }
+}
@@ -0,0 +1,66 @@
+package nl.itslars.jedisjson.cache;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import lombok.SneakyThrows;
+import nl.itslars.jedisjson.codec.JsonPacketCodec;
+import nl.itslars.jedisjson.codec.PacketCodec;
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes a packet that was serialized before, so a cached reply is not serialized again for every request.
+ * This codec is only used for the packet that it was created with.
+ */
+class EncodedPacketCodec implements PacketCodec {
+
+    protected byte[] data;
+    protected PacketCodec codec;
+
+    private EncodedPacketCodec(byte[] data, PacketCodec codec) {
+        this.data = data;
+        this.codec = codec;
+    }
+
+    /**
+     * @param data The packet, serialized by the given codec
+     * @param codec The codec that serialized the packet
+     * @return A codec that is embedded as JSON if the given codec is, and as encoded byte array otherwise
+     */
+    static PacketCodec of(byte[] data, PacketCodec codec) {
+        return codec instanceof JsonPacketCodec ? new Json(data, codec) : new EncodedPacketCodec(data, codec);
+    }
+
+    @Override
+    public byte[] encode(JedisJSONPacket packet) {
+        return data;
+    }
+
+    @Override
+    public <T> T decode(byte[] data, int offset, int length, Type type) {
+        return codec.decode(data, offset, length, type);
+    }
+
+    private static class Json extends EncodedPacketCodec implements JsonPacketCodec {
+
+        private String json;
+
+        private Json(byte[] data, PacketCodec codec) {
+            super(data, codec);
+            this.json = new String(data, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        @SneakyThrows
+        public void write(JsonWriter writer, JedisJSONPacket packet) {
+            writer.jsonValue(json);
+        }
+
+        @Override
+        public <T> T read(JsonReader reader, Type type) {
+            return ((JsonPacketCodec) codec).read(reader, type);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package nl.itslars.jedisjson.cache;
+
+import nl.itslars.jedisjson.codec.PacketCodec;
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Decodes the requests of a listener that may have a reply cache, and keeps the serialized body on every request while the cache is enabled.
+ * The cache is keyed on the body as it was received, so a request is not serialized again to look up its reply.
+ */
+public class RequestBodyCodec implements PacketCodec {
+
+    private PacketCodec codec;
+    private BooleanSupplier cacheEnabled;
+
+    /**
+     * @param codec The codec of the listener
+     * @param cacheEnabled Whether the listener has a reply cache
+     */
+    public RequestBodyCodec(PacketCodec codec, BooleanSupplier cacheEnabled) {
+        this.codec = codec;
+        this.cacheEnabled = cacheEnabled;
+    }
+
+    @Override
+    public byte[] encode(JedisJSONPacket packet) {
+        return codec.encode(packet);
+    }
+
+    @Override
+    public <T> T decode(byte[] data, int offset, int length, Type type) {
+        T packet = codec.decode(data, offset, length, type);
+        // Pooled packets are reused, so the body is always set, also when the cache is not enabled
+        if (packet instanceof JedisJSONPacket) {
+            ((JedisJSONPacket) packet).setReceivedBody(cacheEnabled.getAsBoolean() ? Arrays.copyOfRange(data, offset, offset + length) : null);
+        }
+        return packet;
+    }
+
+    @Override
+    public void release(Object packet) {
+        codec.release(packet);
+    }
+}
@@ -0,0 +1,128 @@
+package nl.itslars.jedisjson.cache;
+
+import nl.itslars.jedisjson.codec.PacketCodec;
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The replies of a listener to the requests of one packet class, by the serialized request.
+ * Requests with the same body get the same reply, regardless of their sender and attributes.
+ * The replies are kept serialized, so a cache hit skips both the listener and the serialization of the reply.
+ */
+public class ResponseCache {
+
+    // The amount of least recently used replies of which the least frequently used one is removed
+    private static final int LFU_SAMPLES = 8;
+
+    private int maxEntries;
+    private long ttlNanos;
+    private CacheEviction eviction;
+    // In order of their last use
+    private LinkedHashMap<Key, CachedResponse> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param maxEntries The maximum amount of replies in the cache
+     * @param ttlMillis The time in milliseconds after which a reply is no longer used, or 0 to keep replies until they are evicted
+     * @param eviction Which reply is removed when the cache is full
+     */
+    public ResponseCache(int maxEntries, long ttlMillis, CacheEviction eviction) {
+        this.maxEntries = Math.max(maxEntries, 1);
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(ttlMillis, 0));
+        this.eviction = eviction;
+    }
+
+    /**
+     * @param request The serialized request
+     * @return The reply to the request, or null if it is not cached or expired
+     */
+    public synchronized CachedResponse get(byte[] request) {
+        Key key = new Key(request);
+        CachedResponse cached = entries.get(key);
+        if (cached == null) return null;
+        if (ttlNanos > 0 && System.nanoTime() - cached.getExpiresAt() >= 0) {
+            entries.remove(key);
+            return null;
+        }
+        cached.hits++;
+        return cached;
+    }
+
+    /**
+     * Serializes the reply, and caches it for the request.
+     * @param request The serialized request
+     * @param response The reply of the listener
+     * @param codec The codec of the reply
+     * @return The cached reply
+     */
+    public CachedResponse put(byte[] request, JedisJSONPacket response, PacketCodec codec) {
+        CachedResponse cached = new CachedResponse(response, EncodedPacketCodec.of(codec.encode(response), codec), System.nanoTime() + ttlNanos);
+        synchronized (this) {
+            Key key = new Key(request);
+            if (!entries.containsKey(key) && entries.size() >= maxEntries) evict();
+            entries.put(key, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * Removes the reply to the given request.
+     * @param request The serialized request
+     */
+    public synchronized void invalidate(byte[] request) {
+        entries.remove(new Key(request));
+    }
+
+    /**
+     * Removes all replies.
+     */
+    public synchronized void invalidate() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, CachedResponse>> iterator = entries.entrySet().iterator();
+        Map.Entry<Key, CachedResponse> eldest = iterator.next();
+        Key evicted = eldest.getKey();
+        if (eviction == CacheEviction.LFU) {
+            int leastHits = eldest.getValue().hits;
+            for (int i = 1; i < LFU_SAMPLES && iterator.hasNext(); i++) {
+                Map.Entry<Key, CachedResponse> entry = iterator.next();
+                if (entry.getValue().hits < leastHits) {
+                    evicted = entry.getKey();
+                    leastHits = entry.getValue().hits;
+                }
+            }
+        }
+        entries.remove(evicted);
+    }
+
+    private static class Key {
+
+        private byte[] bytes;
+        private int hash;
+
+        private Key(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && hash == ((Key) o).hash && Arrays.equals(bytes, ((Key) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package nl.itslars.jedisjson.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.InstanceCreator;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+import nl.itslars.jedisjson.packet.PooledPacket;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The default codec, which serializes packets with GSON.
+ */
+@AllArgsConstructor
+@Getter
+public class GsonPacketCodec implements JsonPacketCodec {
+
+    private Gson gson;
+
+    @Override
+    public byte[] encode(JedisJSONPacket packet) {
+        return gson.toJson(packet).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> T decode(byte[] data, int offset, int length, Type type) {
+        return gson.fromJson(new Utf8Reader(data, offset, length), type);
+    }
+
+    @Override
+    public void write(JsonWriter writer, JedisJSONPacket packet) {
+        gson.toJson(packet, packet.getClass(), writer);
+    }
+
+    @Override
+    public <T> T read(JsonReader reader, Type type) {
+        return gson.fromJson(reader, type);
+    }
+
+    /**
+     * Packets of {@link PooledPacket} classes are decoded into instances of a pool, with an instance creator.
+     */
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public PacketCodec forType(Type type) {
+        if (type instanceof Class && PooledPacket.class.isAssignableFrom((Class<?>) type)) {
+            PacketPool pool = new PacketPool((Class) type);
+            Gson pooledGson = gson.newBuilder().registerTypeAdapter(type, (InstanceCreator<?>) t -> pool.acquire()).create();
+            return new GsonTypeAdapterCodec<>(pooledGson, pooledGson.getAdapter(TypeToken.get(type)), pool);
+        }
+        return new GsonTypeAdapterCodec<>(gson, gson.getAdapter(TypeToken.get(type)));
+    }
+}
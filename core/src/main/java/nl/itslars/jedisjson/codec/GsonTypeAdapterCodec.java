@@ -0,0 +1,89 @@
+package nl.itslars.jedisjson.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import lombok.SneakyThrows;
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+import nl.itslars.jedisjson.packet.PooledPacket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A GSON codec for one packet type, with the type adapter resolved in advance.
+ * This skips the adapter lookup that GSON does for every packet.
+ */
+public class GsonTypeAdapterCodec<P> implements JsonPacketCodec {
+
+    private Gson gson;
+    private TypeAdapter<P> adapter;
+    // The pool that the adapter creates packets from, or null if the packets are not pooled
+    private PacketPool<?> pool;
+
+    public GsonTypeAdapterCodec(Gson gson, TypeAdapter<P> adapter) {
+        this(gson, adapter, null);
+    }
+
+    public GsonTypeAdapterCodec(Gson gson, TypeAdapter<P> adapter, PacketPool<?> pool) {
+        this.gson = gson;
+        this.adapter = adapter;
+        this.pool = pool;
+    }
+
+    @Override
+    @SneakyThrows
+    public byte[] encode(JedisJSONPacket packet) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = gson.newJsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        write(writer, packet);
+        writer.flush();
+        return out.toByteArray();
+    }
+
+    @Override
+    public <T> T decode(byte[] data, int offset, int length, Type type) {
+        return read(gson.newJsonReader(new Utf8Reader(data, offset, length)), type);
+    }
+
+    /**
+     * Writes the packet with the settings of the GSON instance, like GSON itself does.
+     */
+    @Override
+    @SneakyThrows
+    @SuppressWarnings("unchecked")
+    public void write(JsonWriter writer, JedisJSONPacket packet) {
+        boolean serializeNulls = writer.getSerializeNulls();
+        boolean htmlSafe = writer.isHtmlSafe();
+        writer.setSerializeNulls(gson.serializeNulls());
+        writer.setHtmlSafe(gson.htmlSafe());
+        try {
+            adapter.write(writer, (P) packet);
+        } finally {
+            writer.setSerializeNulls(serializeNulls);
+            writer.setHtmlSafe(htmlSafe);
+        }
+    }
+
+    @Override
+    @SneakyThrows
+    @SuppressWarnings("unchecked")
+    public <T> T read(JsonReader reader, Type type) {
+        boolean lenient = reader.isLenient();
+        reader.setLenient(true);
+        try {
+            return (T) adapter.read(reader);
+        } finally {
+            reader.setLenient(lenient);
+        }
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void release(Object packet) {
+        if (pool != null && packet instanceof PooledPacket) ((PacketPool) pool).release((PooledPacket) packet);
+    }
+}
@@ -0,0 +1,31 @@
+package nl.itslars.jedisjson.codec;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+
+import java.lang.reflect.Type;
+
+/**
+ * A codec that serializes packets as JSON.
+ * Packets of such codecs are embedded as JSON object in a JSON envelope, instead of as an encoded byte array.
+ */
+public interface JsonPacketCodec extends PacketCodec {
+
+    /**
+     * Writes the given packet as JSON value to the writer.
+     * @param writer The writer
+     * @param packet The packet
+     */
+    void write(JsonWriter writer, JedisJSONPacket packet);
+
+    /**
+     * Reads a packet from the JSON value at the current position of the reader.
+     * @param reader The reader
+     * @param type The packet type
+     * @param <T> The packet type
+     * @return The deserialized packet
+     */
+    <T> T read(JsonReader reader, Type type);
+
+}
@@ -0,0 +1,49 @@
+package nl.itslars.jedisjson.codec;
+
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+
+import java.lang.reflect.Type;
+
+/**
+ * Serializes and deserializes packet bodies.
+ * A codec can be set as default for a JedisJSON instance, or be registered for a single packet class.
+ * The default codec is the {@link GsonPacketCodec}.
+ */
+public interface PacketCodec {
+
+    /**
+     * Serializes the given packet. The packet ID and source are part of the header, and should not be serialized.
+     * @param packet The packet
+     * @return The serialized packet
+     */
+    byte[] encode(JedisJSONPacket packet);
+
+    /**
+     * Deserializes a packet from the given part of the array.
+     * @param data The array that contains the serialized packet
+     * @param offset The offset of the serialized packet in the array
+     * @param length The length of the serialized packet
+     * @param type The packet type
+     * @param <T> The packet type
+     * @return The deserialized packet
+     */
+    <T> T decode(byte[] data, int offset, int length, Type type);
+
+    /**
+     * Returns a codec for one packet type, that can resolve everything it needs for that type in advance.
+     * The returned codec is only used for packets of the given type.
+     * @param type The packet type
+     * @return The codec for the given type, which is this codec by default
+     */
+    default PacketCodec forType(Type type) {
+        return this;
+    }
+
+    /**
+     * Releases a packet that this codec decoded, once its listener is done with it, so the packet can be reused.
+     * @param packet The packet
+     */
+    default void release(Object packet) {
+    }
+
+}
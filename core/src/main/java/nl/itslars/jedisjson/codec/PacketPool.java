@@ -0,0 +1,49 @@
+package nl.itslars.jedisjson.codec;
+
+import lombok.SneakyThrows;
+import nl.itslars.jedisjson.packet.PooledPacket;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayDeque;
+
+/**
+ * The instances of a {@link PooledPacket} class that can be reused.
+ * Every thread has its own pool, since a packet is decoded and released on the thread that handles it.
+ * @param <P> The packet type
+ */
+public class PacketPool<P extends PooledPacket> {
+
+    /**
+     * The maximum amount of packets that is kept per thread.
+     */
+    public static final int CAPACITY = 64;
+
+    private Constructor<P> constructor;
+    private ThreadLocal<ArrayDeque<P>> pools = ThreadLocal.withInitial(ArrayDeque::new);
+
+    @SneakyThrows
+    public PacketPool(Class<P> clazz) {
+        this.constructor = clazz.getDeclaredConstructor();
+        constructor.setAccessible(true);
+    }
+
+    /**
+     * @return A packet of this thread's pool, or a new packet if the pool is empty
+     */
+    @SneakyThrows
+    public P acquire() {
+        P packet = pools.get().poll();
+        return packet == null ? constructor.newInstance() : packet;
+    }
+
+    /**
+     * Resets the packet and adds it to this thread's pool, unless the pool is full.
+     * @param packet The packet
+     */
+    public void release(P packet) {
+        ArrayDeque<P> pool = pools.get();
+        if (pool.size() >= CAPACITY) return;
+        packet.reset();
+        pool.push(packet);
+    }
+}
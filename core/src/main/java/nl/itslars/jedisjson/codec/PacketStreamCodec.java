@@ -0,0 +1,44 @@
+package nl.itslars.jedisjson.codec;
+
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+import nl.itslars.jedisjson.packet.PacketStream;
+
+import java.io.StringReader;
+import java.lang.reflect.Type;
+
+/**
+ * Decodes packets into a {@link PacketStream} over their JSON, regardless of their type.
+ * This codec is only used to receive packets, the senders serialize them with the codec of their class.
+ */
+public class PacketStreamCodec implements JsonPacketCodec {
+
+    public static final PacketStreamCodec INSTANCE = new PacketStreamCodec();
+
+    @Override
+    public byte[] encode(JedisJSONPacket packet) {
+        throw new UnsupportedOperationException("Packet streams can only be received");
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T decode(byte[] data, int offset, int length, Type type) {
+        return (T) new PacketStream(new JsonReader(new Utf8Reader(data, offset, length)));
+    }
+
+    @Override
+    public void write(JsonWriter writer, JedisJSONPacket packet) {
+        throw new UnsupportedOperationException("Packet streams can only be received");
+    }
+
+    /**
+     * The envelope is read further once the packet is read, so the packet is copied into a reader of its own.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T read(JsonReader reader, Type type) {
+        return (T) new PacketStream(new JsonReader(new StringReader(JsonParser.parseReader(reader).toString())));
+    }
+}
@@ -0,0 +1,66 @@
+package nl.itslars.jedisjson.codec;
+
+import java.io.Reader;
+
+/**
+ * Reads UTF-8 characters straight from a part of a byte array.
+ * Unlike an InputStreamReader, this does not allocate a decoder and its buffers for every packet.
+ * Malformed sequences are read as replacement characters.
+ */
+public class Utf8Reader extends Reader {
+
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private byte[] data;
+    private int position;
+    private int limit;
+    // The low surrogate of a supplementary character, if it did not fit in the previous read
+    private int pendingLowSurrogate = -1;
+
+    public Utf8Reader(byte[] data, int offset, int length) {
+        this.data = data;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) {
+        if (length == 0) return 0;
+        int count = 0;
+        if (pendingLowSurrogate >= 0) {
+            buffer[offset + count++] = (char) pendingLowSurrogate;
+            pendingLowSurrogate = -1;
+        }
+
+        while (count < length && position < limit) {
+            int b = data[position];
+            if (b >= 0) {
+                buffer[offset + count++] = (char) b;
+                position++;
+            } else if ((b & 0xE0) == 0xC0 && position + 1 < limit) {
+                buffer[offset + count++] = (char) (((b & 0x1F) << 6) | (data[position + 1] & 0x3F));
+                position += 2;
+            } else if ((b & 0xF0) == 0xE0 && position + 2 < limit) {
+                buffer[offset + count++] = (char) (((b & 0x0F) << 12) | ((data[position + 1] & 0x3F) << 6) | (data[position + 2] & 0x3F));
+                position += 3;
+            } else if ((b & 0xF8) == 0xF0 && position + 3 < limit) {
+                int codePoint = ((b & 0x07) << 18) | ((data[position + 1] & 0x3F) << 12) | ((data[position + 2] & 0x3F) << 6) | (data[position + 3] & 0x3F);
+                position += 4;
+                buffer[offset + count++] = Character.highSurrogate(codePoint);
+                if (count < length) {
+                    buffer[offset + count++] = Character.lowSurrogate(codePoint);
+                } else {
+                    pendingLowSurrogate = Character.lowSurrogate(codePoint);
+                }
+            } else {
+                buffer[offset + count++] = REPLACEMENT;
+                position++;
+            }
+        }
+        return count == 0 ? -1 : count;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,26 @@
+package nl.itslars.jedisjson.codec;
+
+/**
+ * The envelope format in which a JedisJSON instance sends its packets.
+ * Incoming packets are always accepted in every format, so clients with different formats can share a channel.
+ * To switch formats during a rolling upgrade, first upgrade all clients, then switch the format of the senders.
+ */
+public enum WireFormat {
+
+    /**
+     * A JSON envelope, with the packet embedded as escaped JSON string.
+     * Use this format while clients of older versions (before the embedded envelope) still need to read the packets.
+     */
+    LEGACY_JSON,
+
+    /**
+     * A JSON envelope, with the packet embedded as JSON object.
+     */
+    JSON,
+
+    /**
+     * A compact binary envelope, with the packet encoded by its codec.
+     */
+    BINARY
+
+}
@@ -0,0 +1,77 @@
+package nl.itslars.jedisjson.compress;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses packets with Deflate. The compressed body is the uncompressed length as 4 byte integer, followed by the raw Deflate data.
+ * Every thread reuses its own deflater, inflater and buffer, so compressing a packet does not allocate them again.
+ */
+public class DeflatePacketCompressor implements PacketCompressor {
+
+    // Redis does not accept messages that are larger than this
+    private static final int MAX_LENGTH = 512 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+    private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    public DeflatePacketCompressor() {
+        this(Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param level The compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}
+     */
+    public DeflatePacketCompressor(int level) {
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level, true));
+    }
+
+    @Override
+    public void compress(byte[] data, int offset, int length, ByteArrayOutputStream out) {
+        out.write(length >>> 24);
+        out.write(length >>> 16);
+        out.write(length >>> 8);
+        out.write(length);
+
+        Deflater deflater = deflaters.get();
+        byte[] buffer = buffers.get();
+        deflater.reset();
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        while (!deflater.finished()) {
+            int written = deflater.deflate(buffer);
+            out.write(buffer, 0, written);
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] data, int offset, int length) {
+        if (length < 4) throw new IllegalArgumentException("Compressed packet is too short");
+        int uncompressedLength = (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16 | (data[offset + 2] & 0xFF) << 8 | data[offset + 3] & 0xFF;
+        if (uncompressedLength < 0 || uncompressedLength > MAX_LENGTH) {
+            throw new IllegalArgumentException("Invalid uncompressed packet length: " + uncompressedLength);
+        }
+
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(data, offset + 4, length - 4);
+        byte[] result = new byte[uncompressedLength];
+        int read = 0;
+        try {
+            while (read < uncompressedLength) {
+                int inflated = inflater.inflate(result, read, uncompressedLength - read);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Compressed packet is shorter than its uncompressed length");
+                }
+                read += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Invalid compressed packet", e);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,31 @@
+package nl.itslars.jedisjson.compress;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Compresses the serialized bodies of large packets.
+ * The compressed body must contain everything that is needed to decompress it, like the uncompressed length.
+ * Both the sending and receiving clients need to use the same compressor.
+ * Compressors are used by multiple threads at the same time, so they must be thread safe.
+ */
+public interface PacketCompressor {
+
+    /**
+     * Compresses the given data, and writes the result to the output stream.
+     * @param data The serialized packet
+     * @param offset The offset of the packet in the array
+     * @param length The length of the packet
+     * @param out The stream to write the compressed packet to
+     */
+    void compress(byte[] data, int offset, int length, ByteArrayOutputStream out);
+
+    /**
+     * Decompresses the given data.
+     * @param data The compressed packet
+     * @param offset The offset of the compressed packet in the array
+     * @param length The length of the compressed packet
+     * @return The serialized packet
+     */
+    byte[] decompress(byte[] data, int offset, int length);
+
+}
@@ -0,0 +1,18 @@
+package nl.itslars.jedisjson.dispatch;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Packets with the CONFLATE policy replace the queued packet with the same class, source and scope.
+ * The scope is the packet ID of packets to a channel or conversation, and null for other packets.
+ */
+@AllArgsConstructor
+@EqualsAndHashCode
+class ConflationKey {
+
+    private Class<?> packetClass;
+    private String source;
+    private String scope;
+
+}
@@ -0,0 +1,225 @@
+package nl.itslars.jedisjson.dispatch;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+class DispatcherThread extends Thread {
+
+    private static final Logger LOGGER = Logger.getLogger(DispatcherThread.class.getName());
+
+    private PacketDispatcher dispatcher;
+    private int capacity;
+    private int highWatermark;
+    private int lowWatermark;
+
+    private final Object lock = new Object();
+    // All tasks in order, per priority. Dropped tasks stay in their queue until they are reached, but do not count towards the size.
+    private List<ArrayDeque<Task>> queues = new ArrayList<>();
+    private int size;
+    private int droppedSize;
+    // The queued tasks of classes with the DROP_OLDEST policy, in order, and the queued tasks with the CONFLATE policy by key
+    private Map<Class<?>, ArrayDeque<Task>> droppableTasks = new HashMap<>();
+    private Map<ConflationKey, Task> conflatableTasks = new HashMap<>();
+    private boolean overloaded;
+    private volatile boolean running = true;
+
+    DispatcherThread(String name, PacketDispatcher dispatcher, int capacity, int highWatermark, int lowWatermark) {
+        super(name);
+        setDaemon(true);
+        this.dispatcher = dispatcher;
+        this.capacity = capacity;
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        for (int i = 0; i < Priority.values().length; i++) queues.add(new ArrayDeque<>());
+    }
+
+    void dispatch(Runnable task, Priority priority) {
+        dispatch(new Task(task, null, null, priority), OverloadPolicy.BLOCK);
+    }
+
+    /**
+     * Queues the task without waiting for space in a full queue, for callers that must not block.
+     */
+    void execute(Runnable task) {
+        Task queued = new Task(task, null, null, Priority.NORMAL);
+        queued.waitsForSpace = false;
+        dispatch(queued, OverloadPolicy.BLOCK);
+    }
+
+    /**
+     * Queues the task, or drops it or another task if the thread is overloaded, depending on the policy.
+     * Tasks of the high priority never wait for space in the queue, so they are not held up by a full queue of other tasks.
+     * Dispatcher threads never wait for space either, because a listener that sends a packet to this JVM
+     * would otherwise wait for its own queue, or for a dispatcher thread that waits for it. Their tasks are queued past the capacity instead.
+     * @param task The task, with its conflation key if the policy is CONFLATE
+     */
+    void dispatch(Task task, OverloadPolicy policy) {
+        Task shed = null;
+        boolean becameOverloaded = false;
+        if (Thread.currentThread() instanceof DispatcherThread) task.waitsForSpace = false;
+        synchronized (lock) {
+            if (policy == OverloadPolicy.CONFLATE) {
+                Task queued = conflatableTasks.get(task.conflationKey);
+                if (queued != null) {
+                    queued.runnable = task.runnable;
+                    shed = task;
+                }
+            } else if (overloaded && policy == OverloadPolicy.DROP_NEWEST) {
+                shed = task;
+            } else if (overloaded && policy == OverloadPolicy.DROP_OLDEST) {
+                ArrayDeque<Task> tasks = droppableTasks.get(task.packetClass);
+                shed = tasks == null ? null : tasks.poll();
+                if (shed != null) drop(shed);
+            } else {
+                while (size >= capacity && running && task.waitsForSpace) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+
+            if (shed != task) {
+                queues.get(task.priority.ordinal()).add(task);
+                size++;
+                if (policy == OverloadPolicy.DROP_OLDEST) {
+                    droppableTasks.computeIfAbsent(task.packetClass, c -> new ArrayDeque<>()).add(task);
+                    task.droppable = true;
+                }
+                if (policy == OverloadPolicy.CONFLATE) conflatableTasks.put(task.conflationKey, task);
+                if (!overloaded && size >= highWatermark) {
+                    overloaded = true;
+                    becameOverloaded = true;
+                }
+                lock.notifyAll();
+            }
+        }
+        if (shed != null) dispatcher.onShed(shed.packetClass);
+        if (becameOverloaded) dispatcher.onThreadOverloaded();
+    }
+
+    /**
+     * Marks the task as dropped. The dropped tasks are removed from the queue at once when there are as many as there are queued tasks.
+     */
+    private void drop(Task task) {
+        task.dropped = true;
+        size--;
+        if (++droppedSize > size) {
+            for (ArrayDeque<Task> queue : queues) queue.removeIf(queued -> queued.dropped);
+            droppedSize = 0;
+        }
+    }
+
+    int getQueueSize() {
+        synchronized (lock) {
+            return size;
+        }
+    }
+
+    void shutdown() {
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+    }
+
+    void awaitShutdown() {
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            Runnable task;
+            try {
+                task = take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (task == null) break;
+
+            // A failing listener must not stop the handling of other packets
+            try {
+                task.run();
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Could not handle an incoming packet", e);
+            }
+        }
+    }
+
+    /**
+     * Waits for the next task that was not dropped, of the highest priority that has queued tasks.
+     * @return The task, or null if the thread is shut down and all tasks are handled
+     */
+    private Runnable take() throws InterruptedException {
+        Task task;
+        Runnable runnable;
+        boolean recovered = false;
+        synchronized (lock) {
+            while (true) {
+                ArrayDeque<Task> queue;
+                while ((queue = nextQueue()) == null) {
+                    if (!running) return null;
+                    lock.wait();
+                }
+                task = queue.poll();
+                if (!task.dropped) break;
+                droppedSize--;
+            }
+
+            runnable = task.runnable;
+            size--;
+            if (task.droppable) {
+                // Tasks of a higher priority are taken before the older tasks of their class in a lower priority
+                ArrayDeque<Task> tasks = droppableTasks.get(task.packetClass);
+                if (tasks.peek() == task) tasks.poll();
+                else tasks.remove(task);
+            }
+            if (task.conflationKey != null) conflatableTasks.remove(task.conflationKey, task);
+            if (overloaded && size <= lowWatermark) {
+                overloaded = false;
+                recovered = true;
+            }
+            lock.notifyAll();
+        }
+        if (recovered) dispatcher.onThreadRecovered();
+        return runnable;
+    }
+
+    private ArrayDeque<Task> nextQueue() {
+        for (ArrayDeque<Task> queue : queues) {
+            if (!queue.isEmpty()) return queue;
+        }
+        return null;
+    }
+
+    static class Task {
+
+        private Runnable runnable;
+        private Class<?> packetClass;
+        private ConflationKey conflationKey;
+        private Priority priority;
+        private boolean droppable;
+        private boolean dropped;
+        private boolean waitsForSpace;
+
+        Task(Runnable runnable, Class<?> packetClass, ConflationKey conflationKey, Priority priority) {
+            this.runnable = runnable;
+            this.packetClass = packetClass;
+            this.conflationKey = conflationKey;
+            this.priority = priority;
+            this.waitsForSpace = priority != Priority.HIGH;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package nl.itslars.jedisjson.dispatch;
+
+/**
+ * Is notified when the incoming packets cannot be handled as fast as they arrive.
+ * The methods are called on the subscription and dispatcher threads, so they should return quickly.
+ */
+public interface OverloadListener {
+
+    /**
+     * Called when the queue of a dispatcher thread reaches the high watermark, while no other queue was overloaded.
+     */
+    void onOverloaded();
+
+    /**
+     * Called when the queues of all dispatcher threads are below the low watermark again.
+     */
+    void onRecovered();
+
+}
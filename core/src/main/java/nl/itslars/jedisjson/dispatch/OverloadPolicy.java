@@ -0,0 +1,29 @@
+package nl.itslars.jedisjson.dispatch;
+
+/**
+ * What a dispatcher thread does with an incoming packet of a class while it is overloaded,
+ * so from the moment its queue reaches the high watermark, until the queue is below the low watermark again.
+ */
+public enum OverloadPolicy {
+
+    /**
+     * Queues the packet. When the queue is full, the subscription thread waits until there is space again.
+     */
+    BLOCK,
+    /**
+     * Drops the incoming packet.
+     */
+    DROP_NEWEST,
+    /**
+     * Drops the oldest queued packet of the same class, and queues the incoming packet.
+     */
+    DROP_OLDEST,
+    /**
+     * Replaces the queued packet of the same class and source with the incoming packet.
+     * Packets to a channel or conversation are only replaced by packets to the same channel or conversation.
+     * This happens whenever such a packet is still queued, not only while the dispatcher thread is overloaded.
+     * A packet with a new key is always queued, so the queue may exceed its capacity by one packet per key.
+     */
+    CONFLATE
+
+}
@@ -0,0 +1,160 @@
+package nl.itslars.jedisjson.dispatch;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Dispatches incoming packets to a pool of dispatcher threads, so that slow listeners do not block the subscription thread.
+ * Every packet is dispatched by the thread of its stripe key (the packet ID, conversation ID or channel name).
+ * Packets with the same key are therefore handled one by one, in the order they were received,
+ * while packets with other keys are handled in parallel.
+ * The queue of every thread is bounded. When a queue reaches its high watermark, packets are shed according to
+ * the {@link OverloadPolicy} of their class, until the queue is below the low watermark again.
+ * Every thread drains the packets of the {@link Priority} lanes in order, so a packet waits for all packets of the lanes above it.
+ */
+public class PacketDispatcher {
+
+    private DispatcherThread[] threads;
+    private Map<Class<?>, OverloadPolicy> overloadPolicies = new ConcurrentHashMap<>();
+    @Getter
+    @Setter
+    private OverloadPolicy defaultOverloadPolicy = OverloadPolicy.BLOCK;
+    private List<OverloadListener> overloadListeners = new CopyOnWriteArrayList<>();
+    @Setter
+    private Consumer<Class<?>> shedHandler;
+    private AtomicInteger overloadedThreads = new AtomicInteger();
+
+    public PacketDispatcher(int threadCount) {
+        this(threadCount, Integer.MAX_VALUE, Integer.MAX_VALUE, 0);
+    }
+
+    /**
+     * @param threadCount The amount of dispatcher threads
+     * @param capacity The maximum amount of queued packets per thread
+     * @param highWatermark The amount of queued packets from which a thread is overloaded
+     * @param lowWatermark The amount of queued packets below which an overloaded thread has recovered
+     */
+    public PacketDispatcher(int threadCount, int capacity, int highWatermark, int lowWatermark) {
+        this.threads = new DispatcherThread[threadCount];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new DispatcherThread("JedisJSON-Dispatcher-" + i, this, capacity, Math.min(highWatermark, capacity), lowWatermark);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Queues the task on the thread of the given stripe key.
+     * @param key The stripe key
+     * @param task The task
+     */
+    public void dispatch(String key, Runnable task) {
+        dispatch(key, Priority.NORMAL, task);
+    }
+
+    /**
+     * Queues the task on the thread of the given stripe key, in the queue of the given priority.
+     * @param key The stripe key
+     * @param priority The priority lane of the task
+     * @param task The task
+     */
+    public void dispatch(String key, Priority priority, Runnable task) {
+        getThread(key).dispatch(task, priority);
+    }
+
+    /**
+     * Queues the task on the thread of the given stripe key, behind the queued packets of its lane, without waiting for space in a full queue.
+     * This is meant for tasks of threads that must not block, like the timeout scheduler.
+     * @param key The stripe key
+     * @param task The task
+     */
+    public void execute(String key, Runnable task) {
+        getThread(key).execute(task);
+    }
+
+    /**
+     * Queues the task on the thread of the given stripe key, according to the overload policy of the packet class.
+     * Conflated packets that belong to a listener of their packet ID (like a channel or conversation) are conflated per source and packet ID,
+     * other conflated packets per source. These are dispatched by the thread of their source, so they are conflated on the same thread.
+     * @param key The stripe key, which is the packet ID
+     * @param packetClass The packet class, or null if it is unknown
+     * @param source The client that sent the packet
+     * @param listenerKey Whether the packet ID belongs to a listener
+     * @param priority The priority lane of the task
+     * @param task The task
+     */
+    public void dispatch(String key, Class<?> packetClass, String source, boolean listenerKey, Priority priority, Runnable task) {
+        OverloadPolicy policy = packetClass == null ? defaultOverloadPolicy : overloadPolicies.getOrDefault(packetClass, defaultOverloadPolicy);
+        if (policy != OverloadPolicy.CONFLATE) {
+            getThread(key).dispatch(new DispatcherThread.Task(task, packetClass, null, priority), policy);
+            return;
+        }
+        ConflationKey conflationKey = new ConflationKey(packetClass, source, listenerKey ? key : null);
+        getThread(listenerKey ? key : source).dispatch(new DispatcherThread.Task(task, packetClass, conflationKey, priority), policy);
+    }
+
+    private DispatcherThread getThread(String key) {
+        int hash = key == null ? 0 : key.hashCode();
+        hash ^= hash >>> 16;
+        return threads[(hash & Integer.MAX_VALUE) % threads.length];
+    }
+
+    public void setOverloadPolicy(Class<?> packetClass, OverloadPolicy policy) {
+        overloadPolicies.put(packetClass, policy);
+    }
+
+    /**
+     * @return Whether packets have an overload policy other than BLOCK, so their class must be known before they are dispatched
+     */
+    public boolean hasOverloadPolicies() {
+        return !overloadPolicies.isEmpty() || defaultOverloadPolicy != OverloadPolicy.BLOCK;
+    }
+
+    public void addOverloadListener(OverloadListener listener) {
+        overloadListeners.add(listener);
+    }
+
+    /**
+     * @return Whether the queue of any dispatcher thread is above its low watermark, after it reached its high watermark
+     */
+    public boolean isOverloaded() {
+        return overloadedThreads.get() > 0;
+    }
+
+    void onShed(Class<?> packetClass) {
+        if (shedHandler != null) shedHandler.accept(packetClass);
+    }
+
+    void onThreadOverloaded() {
+        if (overloadedThreads.getAndIncrement() != 0) return;
+        for (OverloadListener listener : overloadListeners) listener.onOverloaded();
+    }
+
+    void onThreadRecovered() {
+        if (overloadedThreads.decrementAndGet() != 0) return;
+        for (OverloadListener listener : overloadListeners) listener.onRecovered();
+    }
+
+    /**
+     * @return The amount of packets that are waiting for a dispatcher thread
+     */
+    public int getQueueSize() {
+        int size = 0;
+        for (DispatcherThread thread : threads) size += thread.getQueueSize();
+        return size;
+    }
+
+    /**
+     * Handles the tasks that are still queued, and stops the dispatcher threads.
+     */
+    public void shutdown() {
+        for (DispatcherThread thread : threads) thread.shutdown();
+        for (DispatcherThread thread : threads) thread.awaitShutdown();
+    }
+}
@@ -0,0 +1,60 @@
+package nl.itslars.jedisjson.dispatch;
+
+import redis.clients.jedis.util.SafeEncoder;
+
+/**
+ * The lane that a packet is sent and handled in, when priority lanes are enabled in the config.
+ * Every lane of a channel is a Redis channel of its own, and every dispatcher thread has a queue per lane.
+ * Dispatcher threads always handle the queued packets of a higher lane first.
+ * Packets in different lanes can overtake each other, even when they have the same target or packet ID.
+ */
+public enum Priority {
+
+    /**
+     * Short control packets, like request replies. The high lanes of all channels are received on a connection of their own.
+     */
+    HIGH("#high"),
+    /**
+     * The lane of all packets without a priority. Its channels are the channels themselves.
+     */
+    NORMAL(""),
+    /**
+     * Bulk packets, that are only handled when no other packets are queued.
+     */
+    LOW("#low");
+
+    private String suffix;
+    private byte[] encodedSuffix;
+
+    Priority(String suffix) {
+        this.suffix = suffix;
+        this.encodedSuffix = SafeEncoder.encode(suffix);
+    }
+
+    /**
+     * @param channel The name of the channel
+     * @return The name of the Redis channel of this lane of the channel
+     */
+    public String channel(String channel) {
+        return channel + suffix;
+    }
+
+    /**
+     * @param channel The Redis channel that a message arrived on
+     * @return The lane of the channel
+     */
+    public static Priority of(byte[] channel) {
+        if (endsWith(channel, HIGH.encodedSuffix)) return HIGH;
+        if (endsWith(channel, LOW.encodedSuffix)) return LOW;
+        return NORMAL;
+    }
+
+    private static boolean endsWith(byte[] channel, byte[] suffix) {
+        int offset = channel.length - suffix.length;
+        if (offset < 0) return false;
+        for (int i = 0; i < suffix.length; i++) {
+            if (channel[offset + i] != suffix[i]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,54 @@
+package nl.itslars.jedisjson.dispatch;
+
+import lombok.SneakyThrows;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Starts tasks on virtual threads, on Java 21 and higher.
+ * The library is compiled for Java 8, so the method that starts a virtual thread is looked up when the class is loaded.
+ */
+public class VirtualThreads {
+
+    private static final Logger LOGGER = Logger.getLogger(VirtualThreads.class.getName());
+    // Thread.startVirtualThread(Runnable), or null if the JVM has no virtual threads
+    private static final MethodHandle START = lookupStart();
+
+    private static MethodHandle lookupStart() {
+        try {
+            // Java 19 and 20 have the method as preview feature, which throws when it is not enabled
+            Object version = Runtime.class.getMethod("version").invoke(null);
+            if ((int) version.getClass().getMethod("feature").invoke(version) < 21) return null;
+            return MethodHandles.publicLookup().findStatic(Thread.class, "startVirtualThread", MethodType.methodType(Thread.class, Runnable.class));
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return Whether this JVM supports virtual threads
+     */
+    public static boolean isSupported() {
+        return START != null;
+    }
+
+    /**
+     * Runs the task on a new virtual thread. Exceptions of the task are logged.
+     * @param task The task
+     */
+    @SneakyThrows
+    public static void start(Runnable task) {
+        Runnable logged = () -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Could not handle an incoming packet", e);
+            }
+        };
+        START.invoke(logged);
+    }
+}
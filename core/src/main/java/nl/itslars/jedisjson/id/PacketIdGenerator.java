@@ -0,0 +1,16 @@
+package nl.itslars.jedisjson.id;
+
+/**
+ * Generates the IDs of packets, replies and conversations.
+ * IDs must be unique across all clients, also after a client restarts, because replies and conversations are routed by them.
+ * The default generator is the {@link CounterPacketIdGenerator}.
+ */
+public interface PacketIdGenerator {
+
+    /**
+     * Generates a new, unique ID. This method may be called by multiple threads at the same time.
+     * @return The ID
+     */
+    String nextId();
+
+}
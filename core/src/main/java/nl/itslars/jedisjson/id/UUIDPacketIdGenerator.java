@@ -0,0 +1,14 @@
+package nl.itslars.jedisjson.id;
+
+import java.util.UUID;
+
+/**
+ * Generates random UUIDs as IDs, which was the behaviour of older versions.
+ */
+public class UUIDPacketIdGenerator implements PacketIdGenerator {
+
+    @Override
+    public String nextId() {
+        return UUID.randomUUID().toString();
+    }
+}
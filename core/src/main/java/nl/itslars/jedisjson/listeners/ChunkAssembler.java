@@ -0,0 +1,215 @@
+package nl.itslars.jedisjson.listeners;
+
+import nl.itslars.jedisjson.JedisJSON;
+import nl.itslars.jedisjson.JedisJSONConfig;
+import nl.itslars.jedisjson.dispatch.VirtualThreads;
+import nl.itslars.jedisjson.listeners.types.JedisJSONPacketListener;
+import nl.itslars.jedisjson.listeners.types.PacketStreamListener;
+import nl.itslars.jedisjson.packet.PacketChunk;
+import nl.itslars.jedisjson.timeout.Timeout;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Puts chunked packets back together, or streams them to a {@link PacketStreamListener} while they arrive.
+ * The chunks of one transfer arrive in order on one subscription thread, but transfers on different connections run concurrently.
+ * The bytes of all transfers that are buffered at once are limited, so a few huge packets can not exhaust the memory.
+ * The amount of packets that are streamed at once is limited as well, because every stream is read on a thread of its own.
+ */
+class ChunkAssembler {
+
+    private static final Logger LOGGER = Logger.getLogger(ChunkAssembler.class.getName());
+
+    private JedisJSON client;
+    private JedisPacketHandler handler;
+    private long maxBufferedBytes;
+    private long timeoutNanos;
+    private int maxStreams;
+    private boolean virtualThreads;
+    private AtomicInteger streams = new AtomicInteger();
+    private Map<String, Transfer> transfers = new ConcurrentHashMap<>();
+    private AtomicLong bufferedBytes = new AtomicLong();
+
+    ChunkAssembler(JedisJSON client, JedisPacketHandler handler) {
+        this.client = client;
+        this.handler = handler;
+        JedisJSONConfig config = client.getConfig();
+        this.maxBufferedBytes = config.getMaxChunkBufferBytes();
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getChunkTimeoutMillis());
+        this.maxStreams = config.getMaxChunkStreams();
+        this.virtualThreads = config.isVirtualThreadListeners() && VirtualThreads.isSupported();
+    }
+
+    void onChunk(byte[] channel, byte[] message) {
+        PacketChunk chunk = PacketChunk.read(message);
+        String key = SafeEncoder.encode(channel) + "/" + chunk.getTransferId();
+        Transfer transfer;
+        if (chunk.isFirst()) {
+            transfer = start(key, chunk);
+            if (transfer == null) return;
+        } else {
+            // Chunks of transfers that started before this client subscribed, or that were dropped, are skipped
+            transfer = transfers.get(key);
+            if (transfer == null) return;
+            if (chunk.getIndex() != transfer.nextIndex) {
+                abort(transfer, "Chunk " + chunk.getIndex() + " of transfer " + chunk.getTransferId() + " arrived after chunk " + (transfer.nextIndex - 1));
+                return;
+            }
+        }
+
+        transfer.nextIndex++;
+        transfer.lastChunkAt = System.nanoTime();
+        if (!transfer.add(chunk)) {
+            abort(transfer, "Transfer " + chunk.getTransferId() + " exceeds the chunk buffer of " + maxBufferedBytes + " bytes");
+            return;
+        }
+        if (!chunk.isLast()) return;
+
+        transfers.remove(key, transfer);
+        transfer.timeout.cancel();
+        if (transfer.buffer == null) return;
+        // The reassembled envelope no longer counts as buffered once it is handed over like any other envelope
+        release(transfer.buffer.length);
+        if (transfer.position != transfer.buffer.length) {
+            handler.onDropped(transfer.clazz);
+            return;
+        }
+        handler.onMessage(channel, transfer.buffer);
+    }
+
+    /**
+     * Starts streaming the packet if it has a stream listener and a JSON envelope, or starts buffering it otherwise.
+     * When the maximum amount of packets is streamed already, the packet is buffered, and handed to the listener once it is complete.
+     * @return The transfer, or null if the packet is too large to buffer
+     */
+    private Transfer start(String key, PacketChunk chunk) {
+        JedisJSONPacketListener<?> listener = handler.getNewIncomingPacketHandler().getListener(chunk.getClazz());
+        boolean json = chunk.getLength() > 0 && chunk.getData()[chunk.getOffset()] == '{';
+        Transfer transfer;
+        if (listener instanceof PacketStreamListener && json && acquireStream()) {
+            ChunkInputStream input = new ChunkInputStream(this::release);
+            transfer = new Transfer(key, chunk.getClazz(), null, input);
+            Runnable stream = () -> {
+                try {
+                    handler.onStream(listener, input, chunk.getTotalLength());
+                } finally {
+                    streams.decrementAndGet();
+                }
+            };
+            if (virtualThreads) {
+                VirtualThreads.start(stream);
+            } else {
+                Thread thread = new Thread(stream, "JedisJSON-Stream-" + chunk.getTransferId());
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } else if (reserve(chunk.getTotalLength())) {
+            transfer = new Transfer(key, chunk.getClazz(), new byte[chunk.getTotalLength()], null);
+        } else {
+            LOGGER.warning("Dropped a packet of " + chunk.getTotalLength() + " bytes, because it exceeds the chunk buffer of " + maxBufferedBytes + " bytes");
+            handler.onDropped(chunk.getClazz());
+            return null;
+        }
+
+        Transfer previous = transfers.put(key, transfer);
+        if (previous != null) abort(previous, "Transfer " + chunk.getTransferId() + " was started again");
+        transfer.timeout = client.getTimeoutScheduler().schedule(() -> checkTimeout(transfer), timeoutNanos, TimeUnit.NANOSECONDS);
+        return transfer;
+    }
+
+    /**
+     * Aborts the transfer if no chunk arrived within the timeout, because the rest of the packet is not going to arrive anymore.
+     */
+    private void checkTimeout(Transfer transfer) {
+        long idle = System.nanoTime() - transfer.lastChunkAt;
+        if (idle < timeoutNanos) {
+            transfer.timeout = client.getTimeoutScheduler().schedule(() -> checkTimeout(transfer), timeoutNanos - idle, TimeUnit.NANOSECONDS);
+        } else {
+            abort(transfer, "Transfer of a " + transfer.clazz + " timed out");
+        }
+    }
+
+    private void abort(Transfer transfer, String reason) {
+        if (!transfers.remove(transfer.key, transfer)) return;
+        transfer.timeout.cancel();
+        if (transfer.buffer != null) release(transfer.buffer.length);
+        if (transfer.input != null) transfer.input.fail(new IOException(reason));
+        LOGGER.warning(reason);
+        handler.onDropped(transfer.clazz);
+    }
+
+    /**
+     * Aborts all transfers that are still going on.
+     */
+    void close() {
+        for (Transfer transfer : transfers.values()) {
+            if (transfers.remove(transfer.key, transfer)) {
+                transfer.timeout.cancel();
+                if (transfer.input != null) transfer.input.fail(new IOException("The client is shut down"));
+            }
+        }
+    }
+
+    private boolean acquireStream() {
+        while (true) {
+            int current = streams.get();
+            if (current >= maxStreams) return false;
+            if (streams.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    private boolean reserve(int bytes) {
+        while (true) {
+            long buffered = bufferedBytes.get();
+            if (buffered + bytes > maxBufferedBytes) return false;
+            if (bufferedBytes.compareAndSet(buffered, buffered + bytes)) return true;
+        }
+    }
+
+    private void release(int bytes) {
+        bufferedBytes.addAndGet(-bytes);
+    }
+
+    private class Transfer {
+
+        private String key;
+        private String clazz;
+        private byte[] buffer;
+        private int position;
+        private ChunkInputStream input;
+        private int nextIndex;
+        private volatile long lastChunkAt;
+        private volatile Timeout timeout;
+
+        private Transfer(String key, String clazz, byte[] buffer, ChunkInputStream input) {
+            this.key = key;
+            this.clazz = clazz;
+            this.buffer = buffer;
+            this.input = input;
+        }
+
+        /**
+         * @return False if the chunk does not fit in the buffer
+         */
+        private boolean add(PacketChunk chunk) {
+            if (buffer != null) {
+                if (position + chunk.getLength() > buffer.length) return false;
+                System.arraycopy(chunk.getData(), chunk.getOffset(), buffer, position, chunk.getLength());
+                position += chunk.getLength();
+                return true;
+            }
+
+            // Streamed chunks count as buffered until they are read
+            if (!reserve(chunk.getLength())) return false;
+            if (!input.add(chunk.getData(), chunk.getOffset(), chunk.getLength(), chunk.isLast())) release(chunk.getLength());
+            return true;
+        }
+    }
+}
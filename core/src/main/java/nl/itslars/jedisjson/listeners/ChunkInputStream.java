@@ -0,0 +1,110 @@
+package nl.itslars.jedisjson.listeners;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.function.IntConsumer;
+
+/**
+ * The envelope of a chunked packet that is read while its chunks arrive.
+ * Reading blocks until the next chunk arrives, and fails if the transfer is aborted.
+ */
+class ChunkInputStream extends InputStream {
+
+    private final Object lock = new Object();
+    private ArrayDeque<Part> parts = new ArrayDeque<>();
+    // Called with the amount of bytes that were read or discarded, so they no longer count as buffered
+    private IntConsumer released;
+    private boolean finished;
+    private boolean closed;
+    private IOException failure;
+
+    ChunkInputStream(IntConsumer released) {
+        this.released = released;
+    }
+
+    /**
+     * Adds the next part of the envelope. The array is not copied.
+     * @return False if the stream is closed, so the part is not needed anymore
+     */
+    boolean add(byte[] data, int offset, int length, boolean last) {
+        synchronized (lock) {
+            if (closed) return false;
+            parts.add(new Part(data, offset, length));
+            if (last) finished = true;
+            lock.notifyAll();
+            return true;
+        }
+    }
+
+    void fail(IOException failure) {
+        synchronized (lock) {
+            if (finished) return;
+            this.failure = failure;
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) return 0;
+        int count;
+        synchronized (lock) {
+            while (parts.isEmpty()) {
+                if (closed) throw new IOException("Stream closed");
+                if (failure != null) throw failure;
+                if (finished) return -1;
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the next chunk", e);
+                }
+            }
+
+            Part part = parts.peek();
+            count = Math.min(length, part.length);
+            System.arraycopy(part.data, part.offset, buffer, offset, count);
+            part.offset += count;
+            part.length -= count;
+            if (part.length == 0) parts.poll();
+        }
+        released.accept(count);
+        return count;
+    }
+
+    /**
+     * Discards the parts that were not read, and the parts that still arrive.
+     */
+    @Override
+    public void close() {
+        int discarded = 0;
+        synchronized (lock) {
+            if (closed) return;
+            closed = true;
+            for (Part part : parts) discarded += part.length;
+            parts.clear();
+            lock.notifyAll();
+        }
+        released.accept(discarded);
+    }
+
+    private static class Part {
+
+        private byte[] data;
+        private int offset;
+        private int length;
+
+        private Part(byte[] data, int offset, int length) {
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package nl.itslars.jedisjson.listeners;
+
+import nl.itslars.jedisjson.JedisJSON;
+import nl.itslars.jedisjson.listeners.types.Conversation;
+import nl.itslars.jedisjson.listeners.types.JedisJSONPacketListener;
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+import nl.itslars.jedisjson.packet.conversation.ConversationEndPacket;
+import nl.itslars.jedisjson.packet.conversation.ConversationStartPacket;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Starts the conversations that other clients open with this client, and ends the conversations that they close.
+ * Every client has its own handler, with the packet classes that it accepts conversations of.
+ */
+public class ConversationHandler {
+
+    private JedisJSON client;
+    // The accepted conversations by the registered name of their packet class
+    private Map<String, Conversation.ConversationData<?>> acceptedConversations = new ConcurrentHashMap<>();
+
+    public ConversationHandler(JedisJSON client) {
+        this.client = client;
+        client.onReceive(ConversationStartPacket.class, this::onStart);
+        client.onReceive(ConversationEndPacket.class, this::onEnd);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void acceptConversation(Conversation.ConversationData<?> data) {
+        Class<? extends JedisJSONPacket> clazz = (Class<? extends JedisJSONPacket>) data.getType();
+        acceptedConversations.put(client.getPacketRegistry().register(clazz).getName(), data);
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private void onStart(ConversationStartPacket packet) {
+        Conversation.ConversationData data = acceptedConversations.get(packet.getClazz());
+        if (data == null) return;
+
+        Conversation conversation = new Conversation(client, data.getCodec(), data.getType(), packet.getSource(), packet.getConversationID(), false, data.getInitialState());
+        client.getJedisPacketHandler().registerListener(packet.getConversationID(), conversation, false);
+        int idleTimeout = client.getConfig().getConversationIdleTimeoutMillis();
+        if (idleTimeout > 0) conversation.setIdleTimeout(idleTimeout, null);
+        data.getConsumer().accept(conversation);
+    }
+
+    private void onEnd(ConversationEndPacket packet) {
+        JedisJSONPacketListener<?> listener = client.getJedisPacketHandler().unregisterListener(packet.getConversationID());
+        if (listener instanceof Conversation) ((Conversation<?>) listener).ended();
+    }
+}
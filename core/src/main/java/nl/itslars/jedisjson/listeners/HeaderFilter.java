@@ -0,0 +1,44 @@
+package nl.itslars.jedisjson.listeners;
+
+import nl.itslars.jedisjson.packet.JedisJSONPacketHeader;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Decides whether an incoming packet is handled, based on its header only.
+ * Filters run before the packet is deserialized, so filtered packets cost almost nothing.
+ */
+@FunctionalInterface
+public interface HeaderFilter {
+
+    /**
+     * @param header The header of the incoming packet
+     * @return Whether the packet should be handled
+     */
+    boolean accept(JedisJSONPacketHeader header);
+
+    /**
+     * @return A filter that only accepts packets of the given clients
+     */
+    static HeaderFilter allowSources(String... sources) {
+        Set<String> allowed = new HashSet<>(Arrays.asList(sources));
+        return header -> allowed.contains(header.getSource());
+    }
+
+    /**
+     * @return A filter that accepts all packets, except for those of the given clients
+     */
+    static HeaderFilter denySources(String... sources) {
+        Set<String> denied = new HashSet<>(Arrays.asList(sources));
+        return header -> !denied.contains(header.getSource());
+    }
+
+    /**
+     * @return A filter that only accepts packets with the given value for the attribute
+     */
+    static HeaderFilter attribute(String key, String value) {
+        return header -> value.equals(header.getAttribute(key));
+    }
+}
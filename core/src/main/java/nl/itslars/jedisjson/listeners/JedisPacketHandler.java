@@ -0,0 +1,467 @@
+package nl.itslars.jedisjson.listeners;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import nl.itslars.jedisjson.JedisJSON;
+import nl.itslars.jedisjson.dispatch.PacketDispatcher;
+import nl.itslars.jedisjson.dispatch.Priority;
+import nl.itslars.jedisjson.listeners.types.Channel;
+import nl.itslars.jedisjson.listeners.types.JedisJSONPacketListener;
+import nl.itslars.jedisjson.metrics.JedisJSONMetrics;
+import nl.itslars.jedisjson.metrics.TrafficMetrics;
+import nl.itslars.jedisjson.packet.BinaryPacketEnvelope;
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+import nl.itslars.jedisjson.packet.JedisJSONPacketEnvelope;
+import nl.itslars.jedisjson.packet.JedisJSONPacketHeader;
+import nl.itslars.jedisjson.packet.PacketBundle;
+import nl.itslars.jedisjson.packet.PacketChunk;
+import nl.itslars.jedisjson.packet.PacketStream;
+import nl.itslars.jedisjson.packet.PacketType;
+import nl.itslars.jedisjson.transport.LocalPacket;
+import nl.itslars.jedisjson.transport.LocalTransport;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Receives the packets of all subscription connections, and hands them to their listeners.
+ */
+public class JedisPacketHandler {
+
+    private static final Logger LOGGER = Logger.getLogger(JedisPacketHandler.class.getName());
+    private static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    private JedisJSON client;
+    @Getter
+    private NewIncomingPacketHandler newIncomingPacketHandler;
+    private Map<String, JedisJSONPacketListener<?>> listeners = new ConcurrentHashMap<>();
+    private PacketDispatcher dispatcher;
+    private PacketDispatcher localDispatcher;
+    private SubscriptionConnection[] connections;
+    // The connection of the high lanes of all channels, if priority lanes are enabled
+    private SubscriptionConnection highConnection;
+    private ChunkAssembler chunkAssembler;
+
+    /**
+     * @param jedisPool The pool that the subscription connections are taken from
+     * @param dispatcher The dispatcher of packets from Redis, or null to handle them on the subscription thread
+     * @param localDispatcher The dispatcher of packets from clients in this JVM, or null if they are not handed over directly
+     */
+    public JedisPacketHandler(JedisJSON client, JedisPool jedisPool, PacketDispatcher dispatcher, PacketDispatcher localDispatcher) {
+        this.client = client;
+        this.newIncomingPacketHandler = new NewIncomingPacketHandler();
+        this.dispatcher = dispatcher;
+        this.localDispatcher = localDispatcher;
+        this.chunkAssembler = new ChunkAssembler(client, this);
+        this.connections = new SubscriptionConnection[Math.max(client.getConfig().getSubscriptionConnections(), 1)];
+        for (int i = 0; i < connections.length; i++) connections[i] = new SubscriptionConnection(this, jedisPool, "JedisJSON-Subscription-" + i);
+        if (client.getConfig().isPriorityLanes()) this.highConnection = new SubscriptionConnection(this, jedisPool, "JedisJSON-Subscription-High");
+    }
+
+    public void registerListener(String id, JedisJSONPacketListener<?> listener, boolean isNewChannel) {
+        listeners.put(id, listener);
+        if (isNewChannel) subscribe(id);
+    }
+
+    /**
+     * Subscribes to the channel, on the subscription connection that the name of the channel hashes to.
+     * All packets of a channel therefore arrive on the same connection, in order.
+     * With priority lanes, the lanes of the channel are subscribed as well, and the high lane arrives on the high lane connection.
+     * @param channel The name of the channel
+     */
+    public void subscribe(String channel) {
+        SubscriptionConnection connection = connections[Math.floorMod(channel.hashCode(), connections.length)];
+        connection.subscribe(SafeEncoder.encode(channel));
+        if (highConnection == null) return;
+        highConnection.subscribe(SafeEncoder.encode(Priority.HIGH.channel(channel)));
+        connection.subscribe(SafeEncoder.encode(Priority.LOW.channel(channel)));
+    }
+
+    /**
+     * Closes all subscription connections. Packets that are being handled on a connection thread are handled first.
+     */
+    public void close() {
+        for (SubscriptionConnection connection : connections) connection.close();
+        if (highConnection != null) highConnection.close();
+        chunkAssembler.close();
+    }
+
+    public JedisJSONPacketListener<?> unregisterListener(String id) {
+        return listeners.remove(id);
+    }
+
+    public void onMessage(byte[] channel, byte[] packet) {
+        if (PacketBundle.isBundle(packet)) {
+            PacketBundle.read(packet, envelope -> onMessage(channel, envelope));
+            return;
+        }
+        if (PacketChunk.isChunk(packet)) {
+            chunkAssembler.onChunk(channel, packet);
+            return;
+        }
+
+        long receivedAt = client.getMetrics().sample() ? System.nanoTime() : NOT_SAMPLED;
+        Priority priority = highConnection == null ? Priority.NORMAL : Priority.of(channel);
+        Runnable task = () -> handleMessage(packet, null, priority, receivedAt);
+        if (highConnection != null) task = timeLane(task, client.getMetrics().getLaneMetrics(priority), packet.length, receivedAt);
+        if (dispatcher == null) {
+            task.run();
+            return;
+        }
+
+        // Only the packet ID is read on the subscription thread, the packet is decoded and handled by the dispatcher.
+        // The listener is resolved by the dispatcher as well, so a conversation that is started by a packet
+        // is always registered before the next packet with the same conversation ID is handled.
+        if (!dispatcher.hasOverloadPolicies()) {
+            String id = BinaryPacketEnvelope.isBinary(packet) ? BinaryPacketEnvelope.readId(packet) : JedisJSONPacketEnvelope.readId(packet);
+            dispatcher.dispatch(id, priority, task);
+            return;
+        }
+
+        // The overload policy depends on the packet class, so then the whole header is read
+        JedisJSONPacketHeader header = BinaryPacketEnvelope.isBinary(packet)
+                ? BinaryPacketEnvelope.read(packet, client.getPacketRegistry()).getHeader()
+                : JedisJSONPacketEnvelope.readHeader(packet);
+        PacketType type = header.getClazz() == null ? null : client.getPacketRegistry().get(header.getClazz());
+        dispatcher.dispatch(header.getId(), type == null ? null : type.getPacketClass(), header.getSource(),
+                header.getId() != null && listeners.containsKey(header.getId()), priority, task);
+    }
+
+    /**
+     * Counts the packet in the metrics of its lane, and times the task if the packet is sampled.
+     */
+    private Runnable timeLane(Runnable task, TrafficMetrics laneMetrics, int length, long receivedAt) {
+        laneMetrics.onReceived(length);
+        if (receivedAt == NOT_SAMPLED) return task;
+        return () -> {
+            long handleStart = System.nanoTime();
+            task.run();
+            long handled = System.nanoTime();
+            laneMetrics.onHandled(handled - handleStart, handled - receivedAt);
+        };
+    }
+
+    /**
+     * Handles a packet that was read from a work queue stream, on the calling thread.
+     * The packet is handled by the given listener, or dropped if it is of another class.
+     * @param packet The packet
+     * @param listener The listener of the work queue
+     */
+    public void onStreamEntry(byte[] packet, JedisJSONPacketListener<?> listener) {
+        long receivedAt = client.getMetrics().sample() ? System.nanoTime() : NOT_SAMPLED;
+        handleMessage(packet, listener, Priority.NORMAL, receivedAt);
+    }
+
+    /**
+     * Receives a packet that a client in this JVM handed over directly.
+     * @param packet The packet
+     */
+    public void onLocalMessage(LocalPacket packet) {
+        long receivedAt = client.getMetrics().sample() ? System.nanoTime() : NOT_SAMPLED;
+        Runnable task = () -> handleLocalMessage(packet, receivedAt);
+        if (highConnection != null) task = timeLane(task, client.getMetrics().getLaneMetrics(packet.getPriority()), packet.getLength(), receivedAt);
+        localDispatcher.dispatch(packet.getHeader().getId(), packet.getPriority(), task);
+    }
+
+    private void handleLocalMessage(LocalPacket packet, long receivedAt) {
+        long decodeStart = receivedAt == NOT_SAMPLED ? NOT_SAMPLED : System.nanoTime();
+        JedisJSONPacketHeader header = packet.getHeader();
+        JedisJSONPacketListener<?> listener = getListener(header);
+        if (listener == null) {
+            onDropped(header.getClazz());
+            return;
+        }
+        if (isFiltered(listener, header)) return;
+        Object data = packet.read(listener.getPacketCodec(), listener.getPacketType());
+        // A shared packet is still the packet of the sender, so it can not be released
+        handle(listener, header, data, packet.getPriority(), packet.getLength(), receivedAt, decodeStart, data != packet.getPacket());
+    }
+
+    /**
+     * @param target The listener that the packet is meant for, or null to look it up by the header
+     * @param priority The lane that the packet arrived in
+     * @param receivedAt The time at which the packet was received, or NOT_SAMPLED if the packet should not be timed
+     */
+    private void handleMessage(byte[] packet, JedisJSONPacketListener<?> target, Priority priority, long receivedAt) {
+        long decodeStart = receivedAt == NOT_SAMPLED ? NOT_SAMPLED : System.nanoTime();
+        // Both envelope formats are always accepted, so clients with different wire formats can share a channel
+        if (BinaryPacketEnvelope.isBinary(packet)) {
+            onBinaryMessage(packet, target, priority, receivedAt, decodeStart);
+        } else {
+            onJsonMessage(packet, target, priority, receivedAt, decodeStart);
+        }
+    }
+
+    private void onBinaryMessage(byte[] packet, JedisJSONPacketListener<?> target, Priority priority, long receivedAt, long decodeStart) {
+        BinaryPacketEnvelope.Frame frame = BinaryPacketEnvelope.read(packet, client.getPacketRegistry());
+        JedisJSONPacketHeader header = frame.getHeader();
+        if (header.getClazz() == null) {
+            client.getMetrics().onDropped(null);
+            return;
+        }
+        JedisJSONPacketListener<?> listener = getListener(target, header);
+        if (listener == null) {
+            onDropped(header.getClazz());
+            return;
+        }
+        if (isLocalCopy(listener, header.getSource()) || isFiltered(listener, header)) return;
+
+        Object data;
+        if (frame.isCompressed()) {
+            byte[] decompressed = client.getCompressor().decompress(frame.getData(), frame.getOffset(), frame.getLength());
+            data = listener.getPacketCodec().decode(decompressed, 0, decompressed.length, listener.getPacketType());
+        } else {
+            data = listener.getPacketCodec().decode(frame.getData(), frame.getOffset(), frame.getLength(), listener.getPacketType());
+        }
+        handle(listener, header, data, priority, packet.length, receivedAt, decodeStart, true);
+    }
+
+    @SneakyThrows
+    private void onJsonMessage(byte[] packet, JedisJSONPacketListener<?> target, Priority priority, long receivedAt, long decodeStart) {
+        // Envelopes of this library are read straight from the bytes, without a reader and without copying the body
+        JedisJSONPacketEnvelope.Frame frame = JedisJSONPacketEnvelope.scan(packet);
+        if (frame != null) {
+            onJsonFrame(packet, frame, target, priority, receivedAt, decodeStart);
+            return;
+        }
+
+        // The envelope is read in one streaming pass. The header fields are written before the data,
+        // so by the time we reach the data, we know which listener (and thus which type) it belongs to.
+        JsonReader reader = JedisJSONPacketEnvelope.reader(packet);
+        String id = null, source = null, clazz = null;
+        Map<String, String> attributes = null;
+        byte[] bufferedData = null;
+        JedisJSONPacketHeader header = null;
+        JedisJSONPacketListener<?> listener = null;
+        Object data = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case JedisJSONPacketEnvelope.ID:
+                    id = reader.nextString();
+                    break;
+                case JedisJSONPacketEnvelope.SOURCE:
+                    source = reader.nextString();
+                    break;
+                case JedisJSONPacketEnvelope.CLAZZ:
+                    clazz = reader.nextString();
+                    break;
+                case JedisJSONPacketEnvelope.ATTRIBUTES:
+                    attributes = JedisJSONPacketEnvelope.readAttributes(reader);
+                    break;
+                case JedisJSONPacketEnvelope.DATA:
+                case JedisJSONPacketEnvelope.BIN:
+                case JedisJSONPacketEnvelope.ZIP:
+                    if (id == null || clazz == null) {
+                        bufferedData = JedisJSONPacketEnvelope.bufferData(reader, name, client.getCompressor());
+                        break;
+                    }
+                    header = new JedisJSONPacketHeader(id, source, clazz, 0, attributes);
+                    listener = getListener(target, header);
+                    if (listener == null) {
+                        reader.skipValue();
+                    } else if (isLocalCopy(listener, source) || isFiltered(listener, header)) {
+                        // The rest of the envelope is not needed, so the packet is not read at all
+                        return;
+                    } else if (name.equals(JedisJSONPacketEnvelope.ZIP)) {
+                        data = JedisJSONPacketEnvelope.readZip(reader, listener.getPacketCodec(), client.getCompressor(), listener.getPacketType());
+                    } else if (name.equals(JedisJSONPacketEnvelope.BIN)) {
+                        data = JedisJSONPacketEnvelope.readBin(reader, listener.getPacketCodec(), listener.getPacketType());
+                    } else {
+                        data = JedisJSONPacketEnvelope.readData(reader, listener.getPacketCodec(), listener.getPacketType());
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        // Envelopes written by other implementations may not have the data as the last field,
+        // so their header is only complete, and the packet only filtered, once the whole envelope is read
+        if (bufferedData != null) {
+            header = new JedisJSONPacketHeader(id, source, clazz, 0, attributes);
+            listener = getListener(target, header);
+            if (listener != null) {
+                if (isLocalCopy(listener, source) || isFiltered(listener, header)) return;
+                data = listener.getPacketCodec().decode(bufferedData, 0, bufferedData.length, listener.getPacketType());
+            }
+        }
+        if (listener == null || data == null) {
+            onDropped(clazz);
+            return;
+        }
+        handle(listener, header, data, priority, packet.length, receivedAt, decodeStart, true);
+    }
+
+    private void onJsonFrame(byte[] packet, JedisJSONPacketEnvelope.Frame frame, JedisJSONPacketListener<?> target, Priority priority, long receivedAt, long decodeStart) {
+        JedisJSONPacketHeader header = frame.getHeader();
+        JedisJSONPacketListener<?> listener = getListener(target, header);
+        if (listener == null) {
+            onDropped(header.getClazz());
+            return;
+        }
+        if (isLocalCopy(listener, header.getSource()) || isFiltered(listener, header)) return;
+
+        Object data = JedisJSONPacketEnvelope.readBody(packet, frame, listener.getPacketCodec(), client.getCompressor(), listener.getPacketType());
+        if (data == null) {
+            onDropped(header.getClazz());
+            return;
+        }
+        handle(listener, header, data, priority, packet.length, receivedAt, decodeStart, true);
+    }
+
+    /**
+     * Reads a chunked JSON envelope while its chunks arrive, and hands the packet to the stream listener once the header is read.
+     * This runs on a thread of its own, because the listener waits for the chunks that the subscription thread receives.
+     * @param input The envelope, which is closed once the listener returns
+     * @param length The size of the whole envelope
+     */
+    void onStream(JedisJSONPacketListener<?> listener, InputStream input, int length) {
+        long receivedAt = client.getMetrics().sample() ? System.nanoTime() : NOT_SAMPLED;
+        String clazz = null;
+        try (InputStream in = input) {
+            JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String id = null, source = null;
+            Map<String, String> attributes = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                switch (name) {
+                    case JedisJSONPacketEnvelope.ID:
+                        id = reader.nextString();
+                        break;
+                    case JedisJSONPacketEnvelope.SOURCE:
+                        source = reader.nextString();
+                        break;
+                    case JedisJSONPacketEnvelope.CLAZZ:
+                        clazz = reader.nextString();
+                        break;
+                    case JedisJSONPacketEnvelope.ATTRIBUTES:
+                        attributes = JedisJSONPacketEnvelope.readAttributes(reader);
+                        break;
+                    case JedisJSONPacketEnvelope.DATA:
+                    case JedisJSONPacketEnvelope.BIN:
+                    case JedisJSONPacketEnvelope.ZIP:
+                        JedisJSONPacketHeader header = new JedisJSONPacketHeader(id, source, clazz, 0, attributes);
+                        if (isFiltered(listener, header)) return;
+                        Object data;
+                        if (name.equals(JedisJSONPacketEnvelope.ZIP)) {
+                            data = JedisJSONPacketEnvelope.readZip(reader, listener.getPacketCodec(), client.getCompressor(), listener.getPacketType());
+                        } else if (name.equals(JedisJSONPacketEnvelope.BIN)) {
+                            data = JedisJSONPacketEnvelope.readBin(reader, listener.getPacketCodec(), listener.getPacketType());
+                        } else if (reader.peek() == JsonToken.STRING) {
+                            data = JedisJSONPacketEnvelope.readData(reader, listener.getPacketCodec(), listener.getPacketType());
+                        } else {
+                            // The listener reads the packet straight from the envelope, while the rest of it arrives
+                            data = new PacketStream(reader);
+                        }
+                        handle(listener, header, data, Priority.NORMAL, length, receivedAt, receivedAt, false);
+                        return;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            onDropped(clazz);
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Could not handle a streamed packet", e);
+        }
+    }
+
+    /**
+     * @param priority The lane that the packet arrived in, in which its replies are sent
+     * @param decoded Whether the packet was decoded for this listener, so it can be released once the listener is done with it
+     */
+    private void handle(JedisJSONPacketListener<?> listener, JedisJSONPacketHeader header, Object data, Priority priority, int length, long receivedAt, long decodeStart, boolean decoded) {
+        JedisJSONMetrics metrics = client.getMetrics();
+        TrafficMetrics packetMetrics = metrics.getPacketMetrics((Class<?>) listener.getPacketType());
+        TrafficMetrics channelMetrics = listener instanceof Channel ? metrics.getChannelMetrics(header.getId()) : null;
+        packetMetrics.onReceived(length);
+        if (channelMetrics != null) channelMetrics.onReceived(length);
+        if (data instanceof JedisJSONPacket) ((JedisJSONPacket) data).setReceivedPriority(priority);
+        if (receivedAt == NOT_SAMPLED) {
+            receiveIncomingPacket(listener, header, data);
+        } else {
+            long handleStart = System.nanoTime();
+            receiveIncomingPacket(listener, header, data);
+            long handled = System.nanoTime();
+            packetMetrics.onHandled(handleStart - decodeStart, handled - handleStart, handled - receivedAt);
+            if (channelMetrics != null) channelMetrics.onHandled(handleStart - decodeStart, handled - handleStart, handled - receivedAt);
+        }
+        if (decoded && listener.isDoneOnReturn()) listener.getPacketCodec().release(data);
+    }
+
+    /**
+     * Channel packets of clients in this JVM are handed over directly, so their copies from Redis are skipped.
+     */
+    private boolean isLocalCopy(JedisJSONPacketListener<?> listener, String source) {
+        LocalTransport localTransport = client.getLocalTransport();
+        return localTransport != null && listener instanceof Channel && localTransport.isLocal(source);
+    }
+
+    /**
+     * Checks the header filters of the client and of the listener, before the packet is deserialized.
+     * @return Whether the packet was filtered out
+     */
+    private boolean isFiltered(JedisJSONPacketListener<?> listener, JedisJSONPacketHeader header) {
+        for (HeaderFilter filter : client.getHeaderFilters()) {
+            if (!filter.accept(header)) {
+                client.getMetrics().onFiltered();
+                return true;
+            }
+        }
+        if (listener.accepts(header)) return false;
+        client.getMetrics().onFiltered();
+        return true;
+    }
+
+    void onDropped(String clazz) {
+        PacketType type = clazz == null ? null : client.getPacketRegistry().get(clazz);
+        client.getMetrics().onDropped(type == null ? null : type.getPacketClass());
+    }
+
+    /**
+     * If the packet ID is attached to a packet listener, the packet belongs to that listener.
+     * Otherwise, the packet belongs to the incoming packet handler.
+     * Packets that share the ID of a listener, but are of another class that has its own listener
+     * (like the start and end packets of a conversation), belong to the incoming packet handler as well.
+     */
+    private JedisJSONPacketListener<?> getListener(JedisJSONPacketHeader header) {
+        JedisJSONPacketListener<?> listener = header.getId() == null ? null : listeners.get(header.getId());
+        if (listener != null && isOtherClass(listener, header.getClazz())) {
+            JedisJSONPacketListener<?> classListener = newIncomingPacketHandler.getListener(header);
+            if (classListener != null) return classListener;
+        }
+        if (listener == null) listener = newIncomingPacketHandler.getListener(header);
+        return listener;
+    }
+
+    private JedisJSONPacketListener<?> getListener(JedisJSONPacketListener<?> target, JedisJSONPacketHeader header) {
+        if (target == null) return getListener(header);
+        return isOtherClass(target, header.getClazz()) ? null : target;
+    }
+
+    private boolean isOtherClass(JedisJSONPacketListener<?> listener, String clazz) {
+        if (!(listener.getPacketType() instanceof Class)) return false;
+        PacketType type = client.getPacketRegistry().get((Class<?>) listener.getPacketType());
+        return type != null && !type.getName().equals(clazz);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T extends JedisJSONPacket> void receiveIncomingPacket(JedisJSONPacketListener<T> listener, JedisJSONPacketHeader header, Object data) {
+        T t = (T) data;
+        t.applyHeader(header);
+        listener.accept(t);
+    }
+}
@@ -0,0 +1,54 @@
+package nl.itslars.jedisjson.listeners;
+
+import nl.itslars.jedisjson.listeners.types.JedisJSONPacketListener;
+import nl.itslars.jedisjson.packet.JedisJSONPacketHeader;
+import nl.itslars.jedisjson.packet.PacketType;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class NewIncomingPacketHandler {
+
+    private Map<String, JedisJSONPacketListener<?>> incomingPacketListeners = new ConcurrentHashMap<>();
+    // Listeners of packet types with a type ID, indexed by that ID
+    private volatile JedisJSONPacketListener<?>[] incomingPacketListenersById = new JedisJSONPacketListener<?>[0];
+
+    public void registerNewIncomingPacketListener(String clazz, JedisJSONPacketListener<?> listener) {
+        if (incomingPacketListeners.putIfAbsent(clazz, listener) != null) {
+            throw new IllegalStateException("You may not register two listeners for a packet class! (" + clazz + ")");
+        }
+    }
+
+    public synchronized void registerNewIncomingPacketListener(PacketType type, JedisJSONPacketListener<?> listener) {
+        registerNewIncomingPacketListener(type.getName(), listener);
+        if (type.getId() != 0) index(type.getId(), listener);
+    }
+
+    /**
+     * Indexes the listener of the type by its type ID, if the type got its ID after its listener was registered by name.
+     * @param type The type, with its new type ID
+     */
+    public synchronized void onTypeIdAssigned(PacketType type) {
+        JedisJSONPacketListener<?> listener = incomingPacketListeners.get(type.getName());
+        if (listener != null && type.getId() != 0) index(type.getId(), listener);
+    }
+
+    private void index(int typeId, JedisJSONPacketListener<?> listener) {
+        // Readers use the array without a lock, so it is never written in place
+        JedisJSONPacketListener<?>[] listeners = Arrays.copyOf(incomingPacketListenersById, Math.max(incomingPacketListenersById.length, typeId + 1));
+        listeners[typeId] = listener;
+        incomingPacketListenersById = listeners;
+    }
+
+    public JedisJSONPacketListener<?> getListener(String clazz) {
+        return clazz == null ? null : incomingPacketListeners.get(clazz);
+    }
+
+    public JedisJSONPacketListener<?> getListener(JedisJSONPacketHeader header) {
+        int typeId = header.getTypeId();
+        if (typeId == 0) return getListener(header.getClazz());
+        JedisJSONPacketListener<?>[] listeners = incomingPacketListenersById;
+        return typeId < listeners.length ? listeners[typeId] : null;
+    }
+}
@@ -0,0 +1,19 @@
+package nl.itslars.jedisjson.listeners;
+
+import nl.itslars.jedisjson.packet.PacketStream;
+
+import java.io.IOException;
+
+/**
+ * Reads incoming packets as JSON, instead of deserialized into their class.
+ */
+@FunctionalInterface
+public interface PacketStreamConsumer {
+
+    /**
+     * @param stream The header fields of the packet, and a reader over its JSON
+     * @throws IOException If the packet can not be read, or the rest of a chunked packet does not arrive
+     */
+    void accept(PacketStream stream) throws IOException;
+
+}
@@ -0,0 +1,113 @@
+package nl.itslars.jedisjson.listeners;
+
+import redis.clients.jedis.BinaryJedisPubSub;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A subscription connection with its own reader thread, which hands the packets that it receives to the packet handler.
+ * The connection is opened when its first channel is subscribed, because Redis only enters subscription mode with a channel.
+ * Channels that are subscribed while another thread is subscribing are sent together, in one SUBSCRIBE command.
+ */
+class SubscriptionConnection extends BinaryJedisPubSub {
+
+    private static final Logger LOGGER = Logger.getLogger(SubscriptionConnection.class.getName());
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+    private JedisPacketHandler handler;
+    private JedisPool jedisPool;
+    private String name;
+
+    private final Object writeLock = new Object();
+    private Queue<byte[]> pendingChannels = new ConcurrentLinkedQueue<>();
+    private Jedis jedis;
+    private Thread thread;
+    private CompletableFuture<Void> subscribed = new CompletableFuture<>();
+    private volatile boolean closed;
+
+    SubscriptionConnection(JedisPacketHandler handler, JedisPool jedisPool, String name) {
+        this.handler = handler;
+        this.jedisPool = jedisPool;
+        this.name = name;
+    }
+
+    void subscribe(byte[] channel) {
+        pendingChannels.add(channel);
+        synchronized (writeLock) {
+            if (closed) return;
+            List<byte[]> channels = new ArrayList<>();
+            byte[] next;
+            while ((next = pendingChannels.poll()) != null) channels.add(next);
+            // Another thread already subscribed this channel together with its own
+            if (channels.isEmpty()) return;
+
+            byte[][] array = channels.toArray(new byte[0][]);
+            if (thread == null) {
+                start(array);
+            } else {
+                subscribe(array);
+            }
+        }
+    }
+
+    /**
+     * Opens the connection, and waits until Redis confirmed the first subscription,
+     * since the connection can only be used for other subscriptions from then on.
+     */
+    private void start(byte[][] channels) {
+        jedis = jedisPool.getResource();
+        thread = new Thread(() -> run(channels), name);
+        thread.start();
+        subscribed.join();
+    }
+
+    private void run(byte[][] channels) {
+        try {
+            jedis.subscribe(this, channels);
+        } catch (JedisException e) {
+            subscribed.completeExceptionally(e);
+            if (!closed) LOGGER.log(Level.SEVERE, "Lost subscription connection " + name, e);
+        }
+    }
+
+    /**
+     * Unsubscribes all channels, which ends the subscription loop, and closes the connection once the reader thread stopped.
+     * The connection is not closed under the reader thread, so it does not fail halfway through a reply.
+     */
+    void close() {
+        synchronized (writeLock) {
+            closed = true;
+            if (thread == null) return;
+            try {
+                unsubscribe();
+            } catch (JedisException e) {
+                LOGGER.log(Level.WARNING, "Could not unsubscribe subscription connection " + name, e);
+            }
+        }
+        try {
+            thread.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        jedis.close();
+    }
+
+    @Override
+    public void onSubscribe(byte[] channel, int subscribedChannels) {
+        subscribed.complete(null);
+    }
+
+    @Override
+    public void onMessage(byte[] channel, byte[] message) {
+        handler.onMessage(channel, message);
+    }
+}
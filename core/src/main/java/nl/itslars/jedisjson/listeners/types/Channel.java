@@ -0,0 +1,122 @@
+package nl.itslars.jedisjson.listeners.types;
+
+import lombok.Setter;
+import nl.itslars.jedisjson.JedisJSON;
+import nl.itslars.jedisjson.codec.PacketCodec;
+import nl.itslars.jedisjson.listeners.HeaderFilter;
+import nl.itslars.jedisjson.packet.ConflatablePacket;
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+import nl.itslars.jedisjson.packet.JedisJSONPacketHeader;
+
+import java.lang.reflect.Type;
+import java.util.function.Consumer;
+
+public class Channel<T extends JedisJSONPacket> implements JedisJSONPacketListener<T> {
+
+    private JedisJSON client;
+    private PacketCodec codec;
+    private Type packetType;
+    private String channelName;
+    private Consumer<T> consumer;
+    private volatile Conflater<T> broadcastConflater;
+    private volatile Conflater<T> receiveConflater;
+    /**
+     * The filter of incoming packets, or null to handle the packets of all other clients.
+     */
+    @Setter
+    private volatile HeaderFilter headerFilter;
+
+    public Channel(JedisJSON client, PacketCodec codec, Type packetType, String channelName) {
+        this.client = client;
+        this.codec = codec;
+        this.packetType = packetType;
+        this.channelName = channelName;
+    }
+
+    public void onReceive(Consumer<T> consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * Compresses the packets that are broadcast in this channel, when they are at least 'threshold' bytes large after serialization.
+     * All clients in the channel can read compressed packets, so only the broadcasting clients need to enable this.
+     * @param threshold The size in bytes from which packets are compressed
+     */
+    public void enableCompression(int threshold) {
+        client.enableCompression(channelName, threshold);
+    }
+
+    /**
+     * Conflates the packets that this client broadcasts in the channel. Of the {@link ConflatablePacket}s with the same conflation key,
+     * only the latest packet is broadcast, at most once per interval. Other packets are still broadcast immediately.
+     * Conflated packets are broadcast by the dispatcher thread of the channel, so their order with packets that are broadcast immediately is not kept.
+     * @param intervalMillis The flush interval in milliseconds
+     */
+    public void enableConflation(long intervalMillis) {
+        broadcastConflater = new Conflater<>(client, channelName, intervalMillis, this::publish);
+    }
+
+    /**
+     * Conflates the packets that this client receives in the channel. Of the {@link ConflatablePacket}s with the same conflation key,
+     * only the latest packet is handed to the consumer, at most once per interval, on the dispatcher thread of the channel.
+     * The packets are still decoded, but the consumer skips the packets that are outdated by the time it would handle them.
+     * @param intervalMillis The flush interval in milliseconds
+     */
+    public void enableReceiveConflation(long intervalMillis) {
+        receiveConflater = new Conflater<>(client, channelName, intervalMillis, this::deliver);
+    }
+
+    public void broadcast(T t) {
+        Conflater<T> conflater = broadcastConflater;
+        if (conflater != null && t instanceof ConflatablePacket) {
+            conflater.add(t);
+        } else {
+            publish(t);
+        }
+    }
+
+    private void publish(T t) {
+        client.sendWithId(channelName, t, channelName, codec);
+    }
+
+    /**
+     * The packets that this client broadcasts itself are skipped, before they are deserialized.
+     */
+    @Override
+    public boolean accepts(JedisJSONPacketHeader header) {
+        if (client.getClientName().equals(header.getSource())) return false;
+        HeaderFilter filter = headerFilter;
+        return filter == null || filter.accept(header);
+    }
+
+    @Override
+    public void accept(T t) {
+        if (consumer == null) return;
+        Conflater<T> conflater = receiveConflater;
+        if (conflater != null && t instanceof ConflatablePacket) {
+            conflater.add(t);
+        } else {
+            consumer.accept(t);
+        }
+    }
+
+    private void deliver(T t) {
+        consumer.accept(t);
+    }
+
+    @Override
+    public PacketCodec getPacketCodec() {
+        return codec;
+    }
+
+    @Override
+    public Type getPacketType() {
+        return packetType;
+    }
+
+    @Override
+    public boolean isDoneOnReturn() {
+        // Conflated packets are kept until the next flush
+        return receiveConflater == null;
+    }
+}
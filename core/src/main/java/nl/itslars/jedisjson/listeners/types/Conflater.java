@@ -0,0 +1,78 @@
+package nl.itslars.jedisjson.listeners.types;
+
+import nl.itslars.jedisjson.JedisJSON;
+import nl.itslars.jedisjson.packet.ConflatablePacket;
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the latest packet per conflation key, and hands the kept packets over once per interval.
+ * A flush is only scheduled when a packet arrives after the previous flush, so an idle conflater does not schedule anything.
+ * Packets are flushed in the order in which their keys arrived. The timeout scheduler only triggers the flush,
+ * which runs on the dispatcher thread of the stripe key, so a slow consumer or a full publish queue does not hold up other timeouts.
+ * @param <T> The packet type
+ */
+class Conflater<T extends JedisJSONPacket> {
+
+    private static final Logger LOGGER = Logger.getLogger(Conflater.class.getName());
+
+    private JedisJSON client;
+    private String stripeKey;
+    private long intervalMillis;
+    private Consumer<T> flushConsumer;
+    private Map<Object, T> latest = new LinkedHashMap<>();
+    private boolean scheduled;
+
+    /**
+     * @param stripeKey The key of the dispatcher thread that flushes the packets, like the channel name
+     */
+    Conflater(JedisJSON client, String stripeKey, long intervalMillis, Consumer<T> flushConsumer) {
+        this.client = client;
+        this.stripeKey = stripeKey;
+        this.intervalMillis = intervalMillis;
+        this.flushConsumer = flushConsumer;
+    }
+
+    /**
+     * Keeps the packet until the next flush, instead of the packet with the same key that was kept before.
+     * @param packet The packet, which has to be a {@link ConflatablePacket}
+     */
+    void add(T packet) {
+        Object key = ((ConflatablePacket) packet).getConflationKey();
+        boolean replaced;
+        boolean schedule = false;
+        synchronized (this) {
+            replaced = latest.put(key, packet) != null;
+            if (!scheduled) {
+                scheduled = true;
+                schedule = true;
+            }
+        }
+        if (replaced) client.getMetrics().onConflated();
+        if (schedule) client.getTimeoutScheduler().schedule(() -> client.execute(stripeKey, this::flush), intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        Collection<T> packets;
+        synchronized (this) {
+            packets = latest.values();
+            latest = new LinkedHashMap<>();
+            scheduled = false;
+        }
+        for (T packet : packets) {
+            // A failing packet must not stop the flush of the other packets
+            try {
+                flushConsumer.accept(packet);
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Could not flush a conflated packet", e);
+            }
+        }
+    }
+}
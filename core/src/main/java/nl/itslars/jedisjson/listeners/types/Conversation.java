@@ -0,0 +1,202 @@
+package nl.itslars.jedisjson.listeners.types;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import nl.itslars.jedisjson.JedisJSON;
+import nl.itslars.jedisjson.codec.PacketCodec;
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+import nl.itslars.jedisjson.packet.conversation.ConversationEndPacket;
+import nl.itslars.jedisjson.packet.conversation.ConversationStartPacket;
+import nl.itslars.jedisjson.timeout.Timeout;
+
+import java.io.Closeable;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.Consumer;
+
+public class Conversation<T extends JedisJSONPacket> implements JedisJSONPacketListener<T>, Closeable {
+
+    // The consumers of states 0 until DENSE_STATES are kept in an array, the consumers of other states in a map
+    private static final int DENSE_STATES = 256;
+    @SuppressWarnings("rawtypes")
+    private static final Consumer[] NO_CONSUMERS = new Consumer[0];
+    // A field updater instead of an AtomicBoolean, so a conversation is one object less
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<Conversation> CLOSED = AtomicIntegerFieldUpdater.newUpdater(Conversation.class, "closed");
+
+    private JedisJSON client;
+    private PacketCodec codec;
+    private Type packetType;
+
+    @Getter
+    private String target;
+    @Getter
+    private String conversationID;
+    // The state is set by the user, and read by the thread that handles the packets of the conversation
+    @Getter
+    @Setter
+    private volatile int state;
+    @SuppressWarnings("unchecked")
+    private volatile Consumer<T>[] denseStateConsumers = NO_CONSUMERS;
+    private volatile Map<Integer, Consumer<T>> sparseStateConsumers;
+    private volatile Runnable endHandler;
+
+    // Idle timeout
+    private volatile long lastActivity = System.nanoTime();
+    private long idleTimeoutNanos;
+    private Runnable idleHandler;
+    private volatile Timeout idleTimeout;
+    private volatile int closed;
+
+    @SuppressWarnings("unchecked")
+    public Conversation(JedisJSON client, PacketCodec codec, Type packetType, String target, String conversationID, boolean start, int initialState) {
+        this.client = client;
+        this.codec = codec;
+        this.packetType = packetType;
+
+        this.target = target;
+        this.conversationID = conversationID;
+        this.state = initialState;
+        client.getMetrics().onConversationStarted();
+
+        // The start packet has the conversation ID as packet ID, so it is dispatched in order with the rest of the conversation
+        if (start) {
+            ConversationStartPacket packet = new ConversationStartPacket(client.getPacketRegistry().register((Class<T>) packetType).getName(), conversationID);
+            client.sendWithId(target, packet, conversationID, client.getCodec(ConversationStartPacket.class));
+        }
+    }
+
+    public synchronized Conversation<T> onState(int state, Consumer<T> consumer) {
+        if (state >= 0 && state < DENSE_STATES) {
+            Consumer<T>[] consumers = denseStateConsumers;
+            if (state >= consumers.length) consumers = Arrays.copyOf(consumers, state + 1);
+            consumers[state] = consumer;
+            denseStateConsumers = consumers;
+        } else {
+            if (sparseStateConsumers == null) sparseStateConsumers = new ConcurrentHashMap<>();
+            sparseStateConsumers.put(state, consumer);
+        }
+        return this;
+    }
+
+    /**
+     * Sets the handler that is called once when the conversation ends: when it is closed by either client, or because it was idle.
+     * @param endHandler The handler
+     * @return This conversation
+     */
+    public Conversation<T> onEnd(Runnable endHandler) {
+        this.endHandler = endHandler;
+        return this;
+    }
+
+    public void setState(int state, T t) {
+        this.state = state;
+        lastActivity = System.nanoTime();
+        client.sendWithId(target, t, conversationID, codec);
+    }
+
+    /**
+     * Closes the conversation when no packet is sent or received for the given time.
+     * This prevents conversations from staying registered forever when the other client is gone.
+     * @param timeout The idle time in milliseconds
+     * @param idleHandler The handler that is called when the conversation is closed because it was idle, or null
+     * @return This conversation
+     */
+    public Conversation<T> setIdleTimeout(int timeout, Runnable idleHandler) {
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+        this.idleHandler = idleHandler;
+        this.lastActivity = System.nanoTime();
+        Timeout previous = idleTimeout;
+        if (previous != null) previous.cancel();
+        this.idleTimeout = client.getTimeoutScheduler().schedule(this::checkIdle, timeout, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * Instead of rescheduling the timeout on every packet, the timeout checks the time of the last activity,
+     * and reschedules itself for the remaining time if the conversation was active in the meantime.
+     */
+    private void checkIdle() {
+        if (closed != 0) return;
+        long remaining = lastActivity + idleTimeoutNanos - System.nanoTime();
+        if (remaining > 0) {
+            idleTimeout = client.getTimeoutScheduler().schedule(this::checkIdle, remaining, TimeUnit.NANOSECONDS);
+            return;
+        }
+        close();
+        if (idleHandler != null) idleHandler.run();
+    }
+
+    @Override
+    public void accept(T t) {
+        lastActivity = System.nanoTime();
+        Consumer<T> consumer = getStateConsumer(state);
+        if (consumer != null) consumer.accept(t);
+    }
+
+    private Consumer<T> getStateConsumer(int state) {
+        Consumer<T>[] consumers = denseStateConsumers;
+        if (state >= 0 && state < consumers.length) return consumers[state];
+        Map<Integer, Consumer<T>> sparse = sparseStateConsumers;
+        return sparse == null ? null : sparse.get(state);
+    }
+
+    @Override
+    public PacketCodec getPacketCodec() {
+        return codec;
+    }
+
+    @Override
+    public Type getPacketType() {
+        return packetType;
+    }
+
+    @Override
+    public boolean isDoneOnReturn() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (!CLOSED.compareAndSet(this, 0, 1)) return;
+        client.sendWithId(target, new ConversationEndPacket(conversationID), conversationID, client.getCodec(ConversationEndPacket.class));
+        client.getJedisPacketHandler().unregisterListener(conversationID);
+        finish();
+    }
+
+    /**
+     * Called when the other client closed the conversation.
+     */
+    public void ended() {
+        if (!CLOSED.compareAndSet(this, 0, 1)) return;
+        finish();
+    }
+
+    public boolean isClosed() {
+        return closed != 0;
+    }
+
+    private void finish() {
+        Timeout timeout = idleTimeout;
+        if (timeout != null) timeout.cancel();
+        client.getMetrics().onConversationFinished();
+        Runnable handler = endHandler;
+        if (handler != null) handler.run();
+    }
+
+    @AllArgsConstructor
+    @Getter
+    public static class ConversationData<T extends JedisJSONPacket> {
+
+        private Type type;
+        private PacketCodec codec;
+        private int initialState;
+        private Consumer<Conversation<T>> consumer;
+
+    }
+}
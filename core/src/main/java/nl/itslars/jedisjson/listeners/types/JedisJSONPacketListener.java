@@ -0,0 +1,34 @@
+package nl.itslars.jedisjson.listeners.types;
+
+import nl.itslars.jedisjson.codec.PacketCodec;
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+import nl.itslars.jedisjson.packet.JedisJSONPacketHeader;
+
+import java.lang.reflect.Type;
+
+public interface JedisJSONPacketListener<T extends JedisJSONPacket> {
+
+    void accept(T t);
+
+    PacketCodec getPacketCodec();
+
+   Type getPacketType();
+
+    /**
+     * Whether the listener handles the packet with the given header. This is checked before the packet is deserialized.
+     * @param header The header of the incoming packet
+     * @return True by default
+     */
+    default boolean accepts(JedisJSONPacketHeader header) {
+        return true;
+    }
+
+    /**
+     * Whether the listener is done with a packet once it is accepted, so the packet can be reused if its class is pooled.
+     * @return False by default
+     */
+    default boolean isDoneOnReturn() {
+        return false;
+    }
+
+}
@@ -0,0 +1,105 @@
+package nl.itslars.jedisjson.listeners.types;
+
+import lombok.Getter;
+import nl.itslars.jedisjson.JedisJSON;
+import nl.itslars.jedisjson.codec.PacketCodec;
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+import nl.itslars.jedisjson.timeout.Timeout;
+
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Collects the replies of multiple targets to one packet, until a quorum of replies is received, or the timeout passes.
+ */
+public class MultiResponseListener<T extends JedisJSONPacket> implements JedisJSONPacketListener<T> {
+
+    private JedisJSON client;
+    private PacketCodec codec;
+    private Type packetType;
+    private String packetID;
+    private Set<String> targets;
+    private int quorum;
+    private Map<String, T> responses = new HashMap<>();
+    private Timeout timeout;
+    private long sentAt = System.nanoTime();
+    private AtomicBoolean finished = new AtomicBoolean();
+    @Getter
+    private CompletableFuture<Map<String, T>> future = new CompletableFuture<>();
+
+    public MultiResponseListener(JedisJSON client, PacketCodec codec, Type packetType, String packetID, Collection<String> targets, int quorum, int timeout) {
+        this.client = client;
+        this.codec = codec;
+        this.packetType = packetType;
+        this.packetID = packetID;
+        this.targets = new HashSet<>(targets);
+        this.quorum = Math.min(quorum, this.targets.size());
+
+        client.getMetrics().onRequestStarted();
+        if (this.quorum <= 0) {
+            complete();
+            return;
+        }
+        if (timeout != Integer.MAX_VALUE) this.timeout = client.getTimeoutScheduler().schedule(this::timeout, timeout, TimeUnit.MILLISECONDS);
+        future.whenComplete((responses, throwable) -> {
+            if (future.isCancelled()) unregister();
+        });
+    }
+
+    @Override
+    public void accept(T t) {
+        boolean quorumReached;
+        synchronized (this) {
+            // Only the first reply of each target counts
+            if (future.isDone() || !targets.contains(t.getSource()) || responses.putIfAbsent(t.getSource(), t) != null) return;
+            quorumReached = responses.size() >= quorum;
+        }
+        client.getMetrics().getRequestLatency().record(System.nanoTime() - sentAt);
+        if (quorumReached) complete();
+    }
+
+    public void fail(Throwable throwable) {
+        unregister();
+        future.completeExceptionally(throwable);
+    }
+
+    private void timeout() {
+        synchronized (this) {
+            if (!future.isDone() && responses.size() < quorum) client.getMetrics().onRequestTimeout();
+        }
+        complete();
+    }
+
+    private void complete() {
+        unregister();
+        Map<String, T> result;
+        synchronized (this) {
+            result = new HashMap<>(responses);
+        }
+        future.complete(result);
+    }
+
+    private void unregister() {
+        if (!finished.compareAndSet(false, true)) return;
+        if (timeout != null) timeout.cancel();
+        client.getJedisPacketHandler().unregisterListener(packetID);
+        client.getMetrics().onRequestFinished(-1);
+    }
+
+    @Override
+    public PacketCodec getPacketCodec() {
+        return codec;
+    }
+
+    @Override
+    public Type getPacketType() {
+        return packetType;
+    }
+}
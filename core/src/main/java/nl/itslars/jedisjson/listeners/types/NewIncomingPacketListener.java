@@ -0,0 +1,63 @@
+package nl.itslars.jedisjson.listeners.types;
+
+import lombok.Setter;
+import nl.itslars.jedisjson.codec.PacketCodec;
+import nl.itslars.jedisjson.listeners.HeaderFilter;
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+import nl.itslars.jedisjson.packet.JedisJSONPacketHeader;
+
+import java.lang.reflect.Type;
+import java.util.function.Consumer;
+
+public class NewIncomingPacketListener<T extends JedisJSONPacket> implements JedisJSONPacketListener<T> {
+
+    private PacketCodec codec;
+    private Type packetType;
+    private Consumer<T> replyConsumer;
+    /**
+     * The filter of incoming packets, or null to handle all packets.
+     */
+    @Setter
+    private volatile HeaderFilter headerFilter;
+    private boolean doneOnReturn;
+
+    public NewIncomingPacketListener(PacketCodec codec, Type packetType, Consumer<T> replyConsumer) {
+        this(codec, packetType, replyConsumer, true);
+    }
+
+    /**
+     * @param doneOnReturn Whether the consumer is done with a packet once it returns, which is not the case if it hands the packet to another thread
+     */
+    public NewIncomingPacketListener(PacketCodec codec, Type packetType, Consumer<T> replyConsumer, boolean doneOnReturn) {
+        this.codec = codec;
+        this.packetType = packetType;
+        this.replyConsumer = replyConsumer;
+        this.doneOnReturn = doneOnReturn;
+    }
+
+    @Override
+    public void accept(T t) {
+        replyConsumer.accept(t);
+    }
+
+    @Override
+    public boolean accepts(JedisJSONPacketHeader header) {
+        HeaderFilter filter = headerFilter;
+        return filter == null || filter.accept(header);
+    }
+
+    @Override
+    public PacketCodec getPacketCodec() {
+        return codec;
+    }
+
+    @Override
+    public Type getPacketType() {
+        return packetType;
+    }
+
+    @Override
+    public boolean isDoneOnReturn() {
+        return doneOnReturn;
+    }
+}
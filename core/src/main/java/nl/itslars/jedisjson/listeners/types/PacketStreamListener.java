@@ -0,0 +1,61 @@
+package nl.itslars.jedisjson.listeners.types;
+
+import com.google.gson.stream.JsonReader;
+import lombok.SneakyThrows;
+import nl.itslars.jedisjson.codec.PacketCodec;
+import nl.itslars.jedisjson.codec.PacketStreamCodec;
+import nl.itslars.jedisjson.codec.Utf8Reader;
+import nl.itslars.jedisjson.listeners.PacketStreamConsumer;
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+import nl.itslars.jedisjson.packet.PacketStream;
+
+import java.lang.reflect.Type;
+
+/**
+ * Hands the incoming packets of a class to a consumer as {@link PacketStream}, without deserializing them.
+ * Chunked packets are handed over as soon as their first chunk arrives, and are read while the other chunks arrive.
+ */
+public class PacketStreamListener implements JedisJSONPacketListener<JedisJSONPacket> {
+
+    private Class<? extends JedisJSONPacket> packetClass;
+    // The codec of the packet class, for packets that clients in this JVM hand over without serializing them
+    private PacketCodec localCodec;
+    private PacketStreamConsumer consumer;
+
+    public PacketStreamListener(Class<? extends JedisJSONPacket> packetClass, PacketCodec localCodec, PacketStreamConsumer consumer) {
+        this.packetClass = packetClass;
+        this.localCodec = localCodec;
+        this.consumer = consumer;
+    }
+
+    @Override
+    @SneakyThrows
+    public void accept(JedisJSONPacket packet) {
+        if (packet instanceof PacketStream) {
+            consumer.accept((PacketStream) packet);
+            return;
+        }
+
+        byte[] data = localCodec.encode(packet);
+        PacketStream stream = new PacketStream(new JsonReader(new Utf8Reader(data, 0, data.length)));
+        stream.setId(packet.getId());
+        stream.setSource(packet.getSource());
+        stream.setAttributes(packet.getAttributes());
+        consumer.accept(stream);
+    }
+
+    @Override
+    public PacketCodec getPacketCodec() {
+        return PacketStreamCodec.INSTANCE;
+    }
+
+    @Override
+    public Type getPacketType() {
+        return packetClass;
+    }
+
+    @Override
+    public boolean isDoneOnReturn() {
+        return true;
+    }
+}
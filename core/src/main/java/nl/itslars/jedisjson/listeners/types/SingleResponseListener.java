@@ -0,0 +1,86 @@
+package nl.itslars.jedisjson.listeners.types;
+
+import nl.itslars.jedisjson.JedisJSON;
+import nl.itslars.jedisjson.codec.PacketCodec;
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+import nl.itslars.jedisjson.timeout.Timeout;
+
+import java.lang.reflect.Type;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+public class SingleResponseListener<T extends JedisJSONPacket> implements JedisJSONPacketListener<T> {
+
+    public static final int DEFAULT_SINGLE_RESPONSE_TIMEOUT = 5000;
+
+    private JedisJSON client;
+    private PacketCodec codec;
+    private Type packetType;
+    private String packetID;
+    private Consumer<T> replyConsumer;
+    private Runnable timeoutHandler;
+    private Timeout timeout;
+    private long sentAt = System.nanoTime();
+    private AtomicBoolean completed = new AtomicBoolean();
+
+    public SingleResponseListener(JedisJSON client, PacketCodec codec, Type packetType, String packetID, Consumer<T> replyConsumer, int timeout) {
+        this(client, codec, packetType, packetID, replyConsumer, timeout, null);
+    }
+
+    public SingleResponseListener(JedisJSON client, PacketCodec codec, Type packetType, String packetID, Consumer<T> replyConsumer, int timeout, Runnable timeoutHandler) {
+        this.client = client;
+        this.codec = codec;
+        this.packetType = packetType;
+        this.packetID = packetID;
+        this.replyConsumer = replyConsumer;
+        this.timeoutHandler = timeoutHandler;
+        client.getMetrics().onRequestStarted();
+
+        // We unregister this listener after #timeout milliseconds
+        // This is required, otherwise a memory leak would exist if replies never came in
+        // If the user doesn't care about such a memory leak, they can set the timeout value to Integer.MAX_VALUE, this will prevent the timeout from being scheduled
+        if (timeout == Integer.MAX_VALUE) return;
+        this.timeout = client.getTimeoutScheduler().schedule(this::timeout, timeout, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void accept(T t) {
+        // Either the reply or the timeout completes the listener, whichever comes first
+        if (!completed.compareAndSet(false, true)) return;
+        if (timeout != null) timeout.cancel();
+        client.getJedisPacketHandler().unregisterListener(packetID);
+        client.getMetrics().onRequestFinished(System.nanoTime() - sentAt);
+        replyConsumer.accept(t);
+    }
+
+    /**
+     * Stops waiting for the reply, without calling the reply consumer or timeout handler.
+     * @return Whether the listener was still waiting
+     */
+    public boolean cancel() {
+        if (!completed.compareAndSet(false, true)) return false;
+        if (timeout != null) timeout.cancel();
+        client.getJedisPacketHandler().unregisterListener(packetID);
+        client.getMetrics().onRequestFinished(-1);
+        return true;
+    }
+
+    private void timeout() {
+        if (!completed.compareAndSet(false, true)) return;
+        client.getJedisPacketHandler().unregisterListener(packetID);
+        client.getMetrics().onRequestFinished(-1);
+        client.getMetrics().onRequestTimeout();
+        if (timeoutHandler != null) timeoutHandler.run();
+    }
+
+    @Override
+    public PacketCodec getPacketCodec() {
+        return codec;
+    }
+
+    @Override
+    public Type getPacketType() {
+        return packetType;
+    }
+}
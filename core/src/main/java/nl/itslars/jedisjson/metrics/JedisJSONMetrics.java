@@ -0,0 +1,316 @@
+package nl.itslars.jedisjson.metrics;
+
+import lombok.Getter;
+import nl.itslars.jedisjson.JedisJSONConfig;
+import nl.itslars.jedisjson.dispatch.OverloadListener;
+import nl.itslars.jedisjson.dispatch.PacketDispatcher;
+import nl.itslars.jedisjson.dispatch.Priority;
+import nl.itslars.jedisjson.publish.PacketPublisher;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The metrics of a JedisJSON instance, per packet class, per channel, per priority lane, and for the instance as a whole.
+ * All metrics can be read from this class, and are registered as MXBeans if JMX is enabled in the config.
+ * Packets are always counted, but only one in every 'metricsSampleInterval' packets is timed.
+ */
+public class JedisJSONMetrics implements JedisJSONMetricsMXBean, OverloadListener {
+
+    private static final Logger LOGGER = Logger.getLogger(JedisJSONMetrics.class.getName());
+    private static final String DOMAIN = "nl.itslars.jedisjson";
+
+    private String clientName;
+    private int sampleInterval;
+    private boolean jmxEnabled;
+    private PacketPublisher publisher;
+    private PacketDispatcher dispatcher;
+
+    private Map<Class<?>, TrafficMetrics> packetMetrics = new ConcurrentHashMap<>();
+    private Map<String, TrafficMetrics> channelMetrics = new ConcurrentHashMap<>();
+    private Map<Priority, TrafficMetrics> laneMetrics = new EnumMap<>(Priority.class);
+    private LongAdder packetsDropped = new LongAdder();
+    private LongAdder packetsShed = new LongAdder();
+    private LongAdder packetsConflated = new LongAdder();
+    private LongAdder packetsFiltered = new LongAdder();
+    private LongAdder responseCacheHits = new LongAdder();
+    private LongAdder responseCacheMisses = new LongAdder();
+    private LongAdder overloads = new LongAdder();
+    private LongAdder requestsInFlight = new LongAdder();
+    private LongAdder conversationsInFlight = new LongAdder();
+    private LongAdder requestTimeouts = new LongAdder();
+    /**
+     * The time from sending a request until its reply was received.
+     */
+    @Getter
+    private LatencyHistogram requestLatency = new LatencyHistogram();
+
+    public JedisJSONMetrics(String clientName, JedisJSONConfig config, PacketPublisher publisher, PacketDispatcher dispatcher) {
+        this.clientName = clientName;
+        this.sampleInterval = Math.max(config.getMetricsSampleInterval(), 1);
+        this.jmxEnabled = config.isJmxEnabled();
+        this.publisher = publisher;
+        this.dispatcher = dispatcher;
+        if (jmxEnabled) register(this, "Client", null);
+        if (config.isPriorityLanes()) {
+            for (Priority priority : Priority.values()) laneMetrics.put(priority, create("Lane", priority.name()));
+        }
+    }
+
+    /**
+     * @return Whether the current packet should be timed
+     */
+    public boolean sample() {
+        return sampleInterval == 1 || ThreadLocalRandom.current().nextInt(sampleInterval) == 0;
+    }
+
+    /**
+     * @return The metrics of all packet classes that were sent or received
+     */
+    public Map<Class<?>, TrafficMetrics> getPacketMetrics() {
+        return Collections.unmodifiableMap(packetMetrics);
+    }
+
+    public TrafficMetrics getPacketMetrics(Class<?> clazz) {
+        TrafficMetrics metrics = packetMetrics.get(clazz);
+        if (metrics != null) return metrics;
+        return packetMetrics.computeIfAbsent(clazz, type -> create("Packet", type.getSimpleName()));
+    }
+
+    /**
+     * @return The metrics of all channels that this instance entered
+     */
+    public Map<String, TrafficMetrics> getChannelMetrics() {
+        return Collections.unmodifiableMap(channelMetrics);
+    }
+
+    /**
+     * @param channel The channel name
+     * @return The metrics of the channel, or null if this instance did not enter the channel
+     */
+    public TrafficMetrics getChannelMetrics(String channel) {
+        return channelMetrics.get(channel);
+    }
+
+    public TrafficMetrics createChannelMetrics(String channel) {
+        return channelMetrics.computeIfAbsent(channel, name -> create("Channel", name));
+    }
+
+    /**
+     * The packets of a lane are timed from the moment they are queued, so their handle time includes decoding them.
+     * @return The metrics of all priority lanes, or an empty map if priority lanes are disabled
+     */
+    public Map<Priority, TrafficMetrics> getLaneMetrics() {
+        return Collections.unmodifiableMap(laneMetrics);
+    }
+
+    /**
+     * @param priority The lane
+     * @return The metrics of the lane, or null if priority lanes are disabled
+     */
+    public TrafficMetrics getLaneMetrics(Priority priority) {
+        return laneMetrics.get(priority);
+    }
+
+    /**
+     * Counts an incoming packet that no listener accepted.
+     * @param clazz The packet class, or null if the packet class is unknown
+     */
+    public void onDropped(Class<?> clazz) {
+        packetsDropped.increment();
+        if (clazz != null) getPacketMetrics(clazz).onDropped();
+    }
+
+    /**
+     * Counts an incoming packet that was dropped or conflated, because the dispatcher was overloaded.
+     * @param clazz The packet class, or null if the packet class is unknown
+     */
+    public void onShed(Class<?> clazz) {
+        packetsShed.increment();
+        if (clazz != null) getPacketMetrics(clazz).onDropped();
+    }
+
+    /**
+     * Counts an incoming packet that a header filter rejected.
+     */
+    public void onFiltered() {
+        packetsFiltered.increment();
+    }
+
+    /**
+     * Counts a packet that was replaced by a newer packet with the same conflation key, before it was broadcast or handled.
+     */
+    public void onConflated() {
+        packetsConflated.increment();
+    }
+
+    /**
+     * Counts a request that was answered from the response cache, without running the listener.
+     */
+    public void onResponseCacheHit() {
+        responseCacheHits.increment();
+    }
+
+    public void onResponseCacheMiss() {
+        responseCacheMisses.increment();
+    }
+
+    @Override
+    public void onOverloaded() {
+        overloads.increment();
+    }
+
+    @Override
+    public void onRecovered() {
+    }
+
+    public void onRequestStarted() {
+        requestsInFlight.increment();
+    }
+
+    /**
+     * @param latencyNanos The time until the reply was received, or -1 if the request did not get a reply
+     */
+    public void onRequestFinished(long latencyNanos) {
+        requestsInFlight.decrement();
+        if (latencyNanos >= 0) requestLatency.record(latencyNanos);
+    }
+
+    public void onRequestTimeout() {
+        requestTimeouts.increment();
+    }
+
+    public void onConversationStarted() {
+        conversationsInFlight.increment();
+    }
+
+    public void onConversationFinished() {
+        conversationsInFlight.decrement();
+    }
+
+    @Override
+    public long getPacketsSent() {
+        return packetMetrics.values().stream().mapToLong(TrafficMetrics::getPacketsSent).sum();
+    }
+
+    @Override
+    public long getPacketsReceived() {
+        return packetMetrics.values().stream().mapToLong(TrafficMetrics::getPacketsReceived).sum();
+    }
+
+    @Override
+    public long getPacketsDropped() {
+        return packetsDropped.sum();
+    }
+
+    @Override
+    public long getPacketsShed() {
+        return packetsShed.sum();
+    }
+
+    @Override
+    public long getPacketsFiltered() {
+        return packetsFiltered.sum();
+    }
+
+    @Override
+    public long getPacketsConflated() {
+        return packetsConflated.sum();
+    }
+
+    @Override
+    public long getResponseCacheHits() {
+        return responseCacheHits.sum();
+    }
+
+    @Override
+    public long getResponseCacheMisses() {
+        return responseCacheMisses.sum();
+    }
+
+    @Override
+    public long getOverloads() {
+        return overloads.sum();
+    }
+
+    @Override
+    public boolean isOverloaded() {
+        return dispatcher != null && dispatcher.isOverloaded();
+    }
+
+    @Override
+    public long getRequestsInFlight() {
+        return requestsInFlight.sum();
+    }
+
+    @Override
+    public long getConversationsInFlight() {
+        return conversationsInFlight.sum();
+    }
+
+    @Override
+    public long getRequestTimeouts() {
+        return requestTimeouts.sum();
+    }
+
+    @Override
+    public double getRequestLatencyMeanMicros() {
+        return requestLatency.getMean() / 1000;
+    }
+
+    @Override
+    public double getRequestLatency99thPercentileMicros() {
+        return requestLatency.getPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public int getPublishQueueSize() {
+        return publisher.getQueueSize();
+    }
+
+    @Override
+    public int getDispatchQueueSize() {
+        return dispatcher == null ? 0 : dispatcher.getQueueSize();
+    }
+
+    /**
+     * Unregisters all MXBeans of this instance.
+     */
+    public void shutdown() {
+        if (!jmxEnabled) return;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (ObjectName name : server.queryNames(new ObjectName(DOMAIN + ":client=" + ObjectName.quote(clientName) + ",*"), null)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Could not unregister the JedisJSON metrics", e);
+        }
+    }
+
+    private TrafficMetrics create(String type, String name) {
+        TrafficMetrics metrics = new TrafficMetrics(sampleInterval);
+        if (jmxEnabled) register(metrics, type, name);
+        return metrics;
+    }
+
+    private void register(Object bean, String type, String name) {
+        try {
+            String objectName = DOMAIN + ":type=" + type + ",client=" + ObjectName.quote(clientName);
+            if (name != null) objectName += ",name=" + ObjectName.quote(name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean, new ObjectName(objectName));
+        } catch (Exception e) {
+            // For example when another instance with the same client name runs in this JVM
+            LOGGER.log(Level.WARNING, "Could not register the JedisJSON metrics as MXBean", e);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package nl.itslars.jedisjson.metrics;
+
+/**
+ * The JMX view of the metrics of a JedisJSON instance. Durations are in microseconds.
+ */
+public interface JedisJSONMetricsMXBean {
+
+    long getPacketsSent();
+
+    long getPacketsReceived();
+
+    long getPacketsDropped();
+
+    long getPacketsShed();
+
+    long getPacketsFiltered();
+
+    long getPacketsConflated();
+
+    long getResponseCacheHits();
+
+    long getResponseCacheMisses();
+
+    long getOverloads();
+
+    boolean isOverloaded();
+
+    long getRequestsInFlight();
+
+    long getConversationsInFlight();
+
+    long getRequestTimeouts();
+
+    double getRequestLatencyMeanMicros();
+
+    double getRequestLatency99thPercentileMicros();
+
+    int getPublishQueueSize();
+
+    int getDispatchQueueSize();
+
+}
@@ -0,0 +1,130 @@
+package nl.itslars.jedisjson.metrics;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of one packet class, channel or priority lane.
+ * Packets are always counted, but only sampled packets are timed, so the durations are based on a sample of the packets.
+ */
+public class TrafficMetrics implements TrafficMetricsMXBean {
+
+    private int sampleInterval;
+    private LongAdder packetsSent = new LongAdder();
+    private LongAdder bytesSent = new LongAdder();
+    private LongAdder packetsReceived = new LongAdder();
+    private LongAdder bytesReceived = new LongAdder();
+    private LongAdder packetsDropped = new LongAdder();
+
+    /**
+     * The time it took to read the envelope and decode the packet.
+     */
+    @Getter
+    private LatencyHistogram decodeTime = new LatencyHistogram();
+    /**
+     * The time the listener took to handle the packet.
+     */
+    @Getter
+    private LatencyHistogram handleTime = new LatencyHistogram();
+    /**
+     * The time from receiving the packet from Redis until the listener handled it, including the time it waited for a dispatcher thread.
+     */
+    @Getter
+    private LatencyHistogram handleLatency = new LatencyHistogram();
+
+    public TrafficMetrics(int sampleInterval) {
+        this.sampleInterval = sampleInterval;
+    }
+
+    public void onSent(int bytes) {
+        packetsSent.increment();
+        bytesSent.add(bytes);
+    }
+
+    public void onReceived(int bytes) {
+        packetsReceived.increment();
+        bytesReceived.add(bytes);
+    }
+
+    public void onDropped() {
+        packetsDropped.increment();
+    }
+
+    public void onHandled(long decodeNanos, long handleNanos, long latencyNanos) {
+        decodeTime.record(decodeNanos);
+        handleTime.record(handleNanos);
+        handleLatency.record(latencyNanos);
+    }
+
+    /**
+     * Times a packet of which the decoding was not timed separately.
+     */
+    public void onHandled(long handleNanos, long latencyNanos) {
+        handleTime.record(handleNanos);
+        handleLatency.record(latencyNanos);
+    }
+
+    @Override
+    public long getPacketsSent() {
+        return packetsSent.sum();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public long getPacketsReceived() {
+        return packetsReceived.sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    @Override
+    public long getPacketsDropped() {
+        return packetsDropped.sum();
+    }
+
+    @Override
+    public double getDecodeTimeMeanMicros() {
+        return decodeTime.getMean() / 1000;
+    }
+
+    @Override
+    public double getDecodeTime99thPercentileMicros() {
+        return decodeTime.getPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getHandleTimeMeanMicros() {
+        return handleTime.getMean() / 1000;
+    }
+
+    @Override
+    public double getHandleTime99thPercentileMicros() {
+        return handleTime.getPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getHandleTimeMaxMicros() {
+        return handleTime.getMax() / 1000.0;
+    }
+
+    /**
+     * Estimates the total time that listeners spent on these packets, by extrapolating the sampled packets.
+     */
+    @Override
+    public long getHandleTimeTotalMillis() {
+        return handleTime.getSum() * sampleInterval / 1_000_000;
+    }
+
+    @Override
+    public double getHandleLatency99thPercentileMicros() {
+        return handleLatency.getPercentile(99) / 1000.0;
+    }
+}
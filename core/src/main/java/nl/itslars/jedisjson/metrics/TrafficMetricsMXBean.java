@@ -0,0 +1,32 @@
+package nl.itslars.jedisjson.metrics;
+
+/**
+ * The JMX view of the metrics of one packet class, channel or priority lane. Durations are in microseconds.
+ */
+public interface TrafficMetricsMXBean {
+
+    long getPacketsSent();
+
+    long getBytesSent();
+
+    long getPacketsReceived();
+
+    long getBytesReceived();
+
+    long getPacketsDropped();
+
+    double getDecodeTimeMeanMicros();
+
+    double getDecodeTime99thPercentileMicros();
+
+    double getHandleTimeMeanMicros();
+
+    double getHandleTime99thPercentileMicros();
+
+    double getHandleTimeMaxMicros();
+
+    long getHandleTimeTotalMillis();
+
+    double getHandleLatency99thPercentileMicros();
+
+}
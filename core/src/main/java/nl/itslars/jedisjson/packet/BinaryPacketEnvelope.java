@@ -0,0 +1,186 @@
+package nl.itslars.jedisjson.packet;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import nl.itslars.jedisjson.codec.PacketCodec;
+import nl.itslars.jedisjson.compress.PacketCompressor;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads and writes the compact binary wire envelope. The layout is as follows:
+ * 1) The magic byte, which can never be the first byte of a JSON envelope
+ * 2) The envelope version
+ * 3) The flags
+ * 4) The type ID of the packet class as variable length integer if the TYPE_ID flag is set,
+ *    otherwise the class name as length prefixed UTF-8 string
+ * 5) The packet ID and source of the packet, as length prefixed UTF-8 strings
+ * 6) The attributes of the packet if the ATTRIBUTES flag is set, as variable length count, followed by the keys and values as length prefixed UTF-8 strings
+ * 7) The packet, as encoded by its codec (and compressed if the COMPRESSED flag is set), which takes up the remainder of the message
+ * Version 1 envelopes have no flags, and always contain the class name.
+ * Only envelopes with attributes are written as version 3, so clients that do not know attributes can still read all other envelopes.
+ */
+public class BinaryPacketEnvelope {
+
+    public static final byte MAGIC = (byte) 0xFE;
+    public static final byte VERSION = 2;
+    public static final byte ATTRIBUTES_VERSION = 3;
+
+    // Flags
+    public static final int TYPE_ID = 1;
+    public static final int COMPRESSED = 2;
+    public static final int ATTRIBUTES = 4;
+
+    public static boolean isBinary(byte[] message) {
+        return message.length > 0 && message[0] == MAGIC;
+    }
+
+    /**
+     * Writes the header fields and the packet into one binary envelope.
+     * @param header The packet header
+     * @param packet The packet
+     * @param codec The codec that should be used to serialize the packet
+     * @param compressor The compressor for large packets, or null to never compress the packet
+     * @param compressionThreshold The size in bytes from which the packet is compressed
+     * @return The serialized envelope
+     */
+    public static byte[] write(JedisJSONPacketHeader header, JedisJSONPacket packet, PacketCodec codec, PacketCompressor compressor, int compressionThreshold) {
+        byte[] data = codec.encode(packet);
+        boolean compress = compressor != null && data.length >= compressionThreshold;
+        Map<String, String> attributes = header.getAttributes();
+        boolean hasAttributes = attributes != null && !attributes.isEmpty();
+        int flags = (header.getTypeId() > 0 ? TYPE_ID : 0) | (compress ? COMPRESSED : 0) | (hasAttributes ? ATTRIBUTES : 0);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream((compress ? data.length / 4 : data.length) + 64);
+        out.write(MAGIC);
+        out.write(hasAttributes ? ATTRIBUTES_VERSION : VERSION);
+        out.write(flags);
+        if (header.getTypeId() > 0) {
+            writeVarInt(out, header.getTypeId());
+        } else {
+            writeString(out, header.getClazz());
+        }
+        writeString(out, header.getId());
+        writeString(out, header.getSource());
+        if (hasAttributes) {
+            writeVarInt(out, attributes.size());
+            for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+                writeString(out, attribute.getKey());
+                writeString(out, attribute.getValue());
+            }
+        }
+        if (compress) {
+            compressor.compress(data, 0, data.length, out);
+        } else {
+            out.write(data, 0, data.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads the header of a binary envelope. The packet itself is not decoded yet,
+     * because its codec and type depend on the listener the header resolves to.
+     * @param message The serialized envelope
+     * @param registry The registry to resolve type IDs with
+     * @return The header, and the location of the serialized packet in the message.
+     * If the type ID is unknown, the class name in the header is null. Compressed packets are not decompressed yet.
+     */
+    public static Frame read(byte[] message, PacketRegistry registry) {
+        int[] position = {1};
+        byte version = message[position[0]++];
+        if (version != 1 && version != VERSION && version != ATTRIBUTES_VERSION) throw new IllegalStateException("Unsupported binary envelope version: " + version);
+        int flags = version == 1 ? 0 : message[position[0]++];
+
+        String clazz;
+        int typeId = 0;
+        if ((flags & TYPE_ID) != 0) {
+            typeId = readVarInt(message, position);
+            PacketType type = registry.get(typeId);
+            clazz = type == null ? null : type.getName();
+        } else {
+            clazz = readString(message, position, true);
+        }
+        String id = readString(message, position, false);
+        String source = readString(message, position, true);
+        Map<String, String> attributes = null;
+        if ((flags & ATTRIBUTES) != 0) {
+            int count = readVarInt(message, position);
+            attributes = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) attributes.put(readString(message, position, true), readString(message, position, true));
+        }
+        return new Frame(new JedisJSONPacketHeader(id, source, clazz, typeId, attributes), message, position[0], message.length - position[0], (flags & COMPRESSED) != 0);
+    }
+
+    /**
+     * Reads only the packet ID of a binary envelope.
+     * @param message The serialized envelope
+     * @return The packet ID
+     */
+    public static String readId(byte[] message) {
+        int[] position = {2};
+        int flags = message[1] == 1 ? 0 : message[position[0]++];
+        if ((flags & TYPE_ID) != 0) {
+            readVarInt(message, position);
+        } else {
+            int length = readVarInt(message, position) - 1;
+            position[0] += Math.max(length, 0);
+        }
+        return readString(message, position, false);
+    }
+
+    static void writeString(ByteArrayOutputStream out, String string) {
+        if (string == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param cached Whether the string is read for most packets, like a class name or source, and should be taken from the string cache
+     */
+    static String readString(byte[] message, int[] position, boolean cached) {
+        int length = readVarInt(message, position) - 1;
+        if (length < 0) return null;
+        String string = cached ? StringCache.INSTANCE.get(message, position[0], length) : new String(message, position[0], length, StandardCharsets.UTF_8);
+        position[0] += length;
+        return string;
+    }
+
+    static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static int readVarInt(byte[] message, int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = message[position[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    @AllArgsConstructor
+    @Getter
+    public static class Frame {
+
+        private JedisJSONPacketHeader header;
+        private byte[] data;
+        private int offset;
+        private int length;
+        private boolean compressed;
+
+    }
+}
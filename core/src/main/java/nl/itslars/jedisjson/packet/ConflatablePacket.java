@@ -0,0 +1,13 @@
+package nl.itslars.jedisjson.packet;
+
+/**
+ * A packet that carries the state of an entity, of which only the latest packet matters, like a position update.
+ * Channels with conflation enabled only deliver the latest packet per conflation key per flush interval.
+ */
+public interface ConflatablePacket {
+
+    /**
+     * @return The key of the entity that the packet is about, like the ID of the entity. Keys are compared with equals.
+     */
+    Object getConflationKey();
+}
@@ -0,0 +1,45 @@
+package nl.itslars.jedisjson.packet;
+
+import lombok.Getter;
+import lombok.Setter;
+import nl.itslars.jedisjson.dispatch.Priority;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Setter
+@Getter
+public abstract class JedisJSONPacket {
+
+    private transient String id;
+    private transient String source;
+    /**
+     * Small routing attributes that are sent in the header, so receivers can filter on them without deserializing the packet.
+     */
+    private transient Map<String, String> attributes;
+    /**
+     * The serialized body of the packet as it was received, if its listener has a reply cache, or null otherwise.
+     * It is the key of the cached reply, and is cleared when the packet is sent.
+     */
+    private transient byte[] receivedBody;
+    /**
+     * The lane that the packet was received in. Replies to the packet are only sent in the reply lane if the packet
+     * arrived in a priority lane, because then the sender is known to receive the priority lanes.
+     */
+    private transient Priority receivedPriority = Priority.NORMAL;
+
+    public void applyHeader(JedisJSONPacketHeader header) {
+        this.id = header.getId();
+        this.source = header.getSource();
+        this.attributes = header.getAttributes();
+    }
+
+    public void setAttribute(String key, String value) {
+        if (attributes == null) attributes = new HashMap<>();
+        attributes.put(key, value);
+    }
+
+    public String getAttribute(String key) {
+        return attributes == null ? null : attributes.get(key);
+    }
+}
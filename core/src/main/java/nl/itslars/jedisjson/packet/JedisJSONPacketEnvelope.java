@@ -0,0 +1,448 @@
+package nl.itslars.jedisjson.packet;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import nl.itslars.jedisjson.codec.JsonPacketCodec;
+import nl.itslars.jedisjson.codec.PacketCodec;
+import nl.itslars.jedisjson.codec.Utf8Reader;
+import nl.itslars.jedisjson.compress.PacketCompressor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads and writes the JedisJSON wire envelope.
+ * The serialized packet is embedded as a JSON object in the 'data' field, instead of as an escaped JSON string.
+ * This way, both the header and the packet are written and read in one streaming pass.
+ * Packets of codecs that do not serialize to JSON are embedded as Base64 string in the 'bin' field.
+ * Compressed packets are embedded as Base64 string in the 'zip' field.
+ */
+public class JedisJSONPacketEnvelope {
+
+    public static final String ID = "id";
+    public static final String SOURCE = "source";
+    public static final String CLAZZ = "clazz";
+    public static final String ATTRIBUTES = "attrs";
+    public static final String DATA = "data";
+    public static final String BIN = "bin";
+    public static final String ZIP = "zip";
+
+    /**
+     * Writes the header fields and the packet into one JSON object.
+     * The 'data' field is always written last, so receivers can resolve the packet type before they reach the body.
+     * @param header The packet header
+     * @param packet The packet
+     * @param codec The codec that should be used to serialize the packet
+     * @param legacy Whether the packet should be embedded as escaped JSON string, for clients of older versions.
+     *               Legacy envelopes are never compressed.
+     * @param compressor The compressor for large packets, or null to never compress the packet
+     * @param compressionThreshold The size in bytes from which the packet is compressed
+     * @return The serialized envelope
+     */
+    @SneakyThrows
+    public static byte[] write(JedisJSONPacketHeader header, JedisJSONPacket packet, PacketCodec codec, boolean legacy,
+                               PacketCompressor compressor, int compressionThreshold) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.beginObject();
+        writer.name(ID).value(header.getId());
+        writer.name(SOURCE).value(header.getSource());
+        writer.name(CLAZZ).value(header.getClazz());
+        if (header.getAttributes() != null && !header.getAttributes().isEmpty()) {
+            writer.name(ATTRIBUTES).beginObject();
+            for (Map.Entry<String, String> attribute : header.getAttributes().entrySet()) writer.name(attribute.getKey()).value(attribute.getValue());
+            writer.endObject();
+        }
+        if (compressor != null && !legacy) {
+            // The size of the packet is only known after it is serialized, so it can not be streamed into the envelope
+            byte[] data = codec.encode(packet);
+            if (data.length >= compressionThreshold) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4 + 16);
+                compressor.compress(data, 0, data.length, compressed);
+                writer.name(ZIP).value(Base64.getEncoder().encodeToString(compressed.toByteArray()));
+            } else if (!(codec instanceof JsonPacketCodec)) {
+                writer.name(BIN).value(Base64.getEncoder().encodeToString(data));
+            } else {
+                writer.name(DATA).jsonValue(new String(data, StandardCharsets.UTF_8));
+            }
+        } else if (!(codec instanceof JsonPacketCodec)) {
+            writer.name(BIN).value(Base64.getEncoder().encodeToString(codec.encode(packet)));
+        } else if (legacy) {
+            writer.name(DATA).value(new String(codec.encode(packet), StandardCharsets.UTF_8));
+        } else {
+            writer.name(DATA);
+            ((JsonPacketCodec) codec).write(writer, packet);
+        }
+        writer.endObject();
+        writer.flush();
+        return out.toByteArray();
+    }
+
+    /**
+     * Creates a streaming reader over a serialized envelope.
+     * @param message The serialized envelope
+     * @return The reader
+     */
+    public static JsonReader reader(byte[] message) {
+        return new JsonReader(new Utf8Reader(message, 0, message.length));
+    }
+
+    /**
+     * Reads only the packet ID of a serialized envelope. The ID is the first field, so the rest of the envelope is not read.
+     * @param message The serialized envelope
+     * @return The packet ID, or null if the envelope does not have one
+     */
+    @SneakyThrows
+    public static String readId(byte[] message) {
+        // The ID of envelopes written by this class is read from the bytes, other envelopes are read with a reader
+        int[] position = {0};
+        if (expect(message, position, '{') && expect(message, position, '"')) {
+            int nameEnd = stringEnd(message, position[0]);
+            if (nameEnd >= 0 && nameEquals(message, position[0], nameEnd, ID)) {
+                position[0] = nameEnd + 1;
+                if (expect(message, position, ':') && expect(message, position, '"')) {
+                    int end = stringEnd(message, position[0]);
+                    if (end >= 0) return new String(message, position[0], end - position[0], StandardCharsets.UTF_8);
+                }
+            }
+        }
+
+        JsonReader reader = reader(message);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(ID)) return reader.nextString();
+            reader.skipValue();
+        }
+        return null;
+    }
+
+    /**
+     * Reads the header fields of a serialized envelope. The header fields are written before the packet, so the packet itself is not read.
+     * @param message The serialized envelope
+     * @return The packet header
+     */
+    @SneakyThrows
+    public static JedisJSONPacketHeader readHeader(byte[] message) {
+        Frame frame = scan(message);
+        if (frame != null) return frame.getHeader();
+
+        JsonReader reader = reader(message);
+        String id = null, source = null, clazz = null;
+        Map<String, String> attributes = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals(ID)) {
+                id = reader.nextString();
+            } else if (name.equals(SOURCE)) {
+                source = reader.nextString();
+            } else if (name.equals(CLAZZ)) {
+                clazz = reader.nextString();
+            } else if (name.equals(ATTRIBUTES)) {
+                attributes = readAttributes(reader);
+            } else {
+                if (id != null && source != null && clazz != null) break;
+                reader.skipValue();
+            }
+        }
+        return new JedisJSONPacketHeader(id, source, clazz, 0, attributes);
+    }
+
+    /**
+     * Reads the attributes at the current position of the reader.
+     * @param reader The reader, positioned at the value of the 'attrs' field
+     * @return The attributes
+     */
+    @SneakyThrows
+    public static Map<String, String> readAttributes(JsonReader reader) {
+        Map<String, String> attributes = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) attributes.put(reader.nextName(), reader.nextString());
+        reader.endObject();
+        return attributes;
+    }
+
+    /**
+     * Reads the header of a serialized envelope straight from its bytes, and finds the packet body, without a JsonReader.
+     * The class name and source are taken from a cache, so they are not allocated for every packet.
+     * Only the layout that {@link #write} produces is accepted: the header fields as strings without escape sequences,
+     * followed by the body as the last field. Other envelopes, like legacy envelopes, have to be read with a reader.
+     * @param message The serialized envelope
+     * @return The frame, or null if the envelope has another layout
+     */
+    public static Frame scan(byte[] message) {
+        int[] position = {0};
+        String id = null, source = null, clazz = null;
+        Map<String, String> attributes = null;
+        if (!expect(message, position, '{')) return null;
+        while (expect(message, position, '"')) {
+            int nameStart = position[0];
+            int nameEnd = stringEnd(message, nameStart);
+            if (nameEnd < 0) return null;
+            position[0] = nameEnd + 1;
+            if (!expect(message, position, ':')) return null;
+
+            boolean isId = nameEquals(message, nameStart, nameEnd, ID);
+            if (isId || nameEquals(message, nameStart, nameEnd, SOURCE) || nameEquals(message, nameStart, nameEnd, CLAZZ)) {
+                if (!expect(message, position, '"')) return null;
+                int end = stringEnd(message, position[0]);
+                if (end < 0) return null;
+                int length = end - position[0];
+                if (isId) {
+                    id = new String(message, position[0], length, StandardCharsets.UTF_8);
+                } else if (nameEquals(message, nameStart, nameEnd, SOURCE)) {
+                    source = StringCache.INSTANCE.get(message, position[0], length);
+                } else {
+                    clazz = StringCache.INSTANCE.get(message, position[0], length);
+                }
+                position[0] = end + 1;
+                if (!expect(message, position, ',')) return null;
+                continue;
+            }
+            if (nameEquals(message, nameStart, nameEnd, ATTRIBUTES)) {
+                attributes = scanAttributes(message, position);
+                if (attributes == null || !expect(message, position, ',')) return null;
+                continue;
+            }
+
+            String field = nameEquals(message, nameStart, nameEnd, DATA) ? DATA
+                    : nameEquals(message, nameStart, nameEnd, BIN) ? BIN
+                    : nameEquals(message, nameStart, nameEnd, ZIP) ? ZIP : null;
+            if (field == null || id == null || clazz == null) return null;
+            int start, end;
+            if (field.equals(DATA)) {
+                skipWhitespace(message, position);
+                start = position[0];
+                // Legacy envelopes carry the body as escaped string
+                if (start >= message.length || message[start] == '"') return null;
+                end = valueEnd(message, start);
+                if (end < 0) return null;
+                position[0] = end;
+            } else {
+                if (!expect(message, position, '"')) return null;
+                start = position[0];
+                end = stringEnd(message, start);
+                if (end < 0) return null;
+                position[0] = end + 1;
+            }
+            // The body has to be the last field, so it is known to be complete
+            if (!expect(message, position, '}')) return null;
+            skipWhitespace(message, position);
+            if (position[0] != message.length) return null;
+            return new Frame(new JedisJSONPacketHeader(id, source, clazz, 0, attributes), field, start, end - start);
+        }
+        return null;
+    }
+
+    /**
+     * Decodes the packet body of a scanned envelope, straight from the bytes of the envelope.
+     * @param message The serialized envelope
+     * @param frame The frame of the envelope
+     * @param codec The codec that should be used to deserialize the packet
+     * @param compressor The compressor that compressed the packet, if it is in the 'zip' field
+     * @param type The packet type
+     * @param <T> The packet type
+     * @return The deserialized packet
+     */
+    public static <T> T readBody(byte[] message, Frame frame, PacketCodec codec, PacketCompressor compressor, Type type) {
+        if (frame.getField().equals(DATA)) return codec.decode(message, frame.getOffset(), frame.getLength(), type);
+        ByteBuffer data = Base64.getDecoder().decode(ByteBuffer.wrap(message, frame.getOffset(), frame.getLength()));
+        if (frame.getField().equals(BIN)) return codec.decode(data.array(), data.arrayOffset() + data.position(), data.remaining(), type);
+        byte[] decompressed = compressor.decompress(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        return decode(decompressed, codec, type);
+    }
+
+    /**
+     * Reads the packet body at the current position of the reader, straight into the given type.
+     * Envelopes of older clients carry the body as an escaped JSON string, these are still accepted.
+     * @param reader The reader, positioned at the value of the 'data' field
+     * @param codec The codec that should be used to deserialize the packet
+     * @param type The packet type
+     * @param <T> The packet type
+     * @return The deserialized packet
+     */
+    @SneakyThrows
+    public static <T> T readData(JsonReader reader, PacketCodec codec, Type type) {
+        if (reader.peek() == JsonToken.STRING) return decode(reader.nextString().getBytes(StandardCharsets.UTF_8), codec, type);
+        if (codec instanceof JsonPacketCodec) return ((JsonPacketCodec) codec).read(reader, type);
+        return decode(JsonParser.parseReader(reader).toString().getBytes(StandardCharsets.UTF_8), codec, type);
+    }
+
+    /**
+     * Reads the Base64 encoded packet body at the current position of the reader.
+     * @param reader The reader, positioned at the value of the 'bin' field
+     * @param codec The codec that should be used to deserialize the packet
+     * @param type The packet type
+     * @param <T> The packet type
+     * @return The deserialized packet
+     */
+    @SneakyThrows
+    public static <T> T readBin(JsonReader reader, PacketCodec codec, Type type) {
+        return decode(Base64.getDecoder().decode(reader.nextString()), codec, type);
+    }
+
+    /**
+     * Reads and decompresses the Base64 encoded packet body at the current position of the reader.
+     * @param reader The reader, positioned at the value of the 'zip' field
+     * @param codec The codec that should be used to deserialize the packet
+     * @param compressor The compressor that compressed the packet
+     * @param type The packet type
+     * @param <T> The packet type
+     * @return The deserialized packet
+     */
+    @SneakyThrows
+    public static <T> T readZip(JsonReader reader, PacketCodec codec, PacketCompressor compressor, Type type) {
+        return decode(unzip(reader, compressor), codec, type);
+    }
+
+    /**
+     * Buffers the packet body at the current position of the reader.
+     * This is only needed when the body is not the last field of the envelope.
+     * @param reader The reader, positioned at the value of the 'data', 'bin' or 'zip' field
+     * @param field The name of the field
+     * @param compressor The compressor that compressed the packet, if it is the 'zip' field
+     * @return The buffered packet body
+     */
+    @SneakyThrows
+    public static byte[] bufferData(JsonReader reader, String field, PacketCompressor compressor) {
+        if (field.equals(ZIP)) return unzip(reader, compressor);
+        if (field.equals(BIN)) return Base64.getDecoder().decode(reader.nextString());
+        if (reader.peek() == JsonToken.STRING) return reader.nextString().getBytes(StandardCharsets.UTF_8);
+        JsonElement element = JsonParser.parseReader(reader);
+        return element.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @SneakyThrows
+    private static byte[] unzip(JsonReader reader, PacketCompressor compressor) {
+        byte[] compressed = Base64.getDecoder().decode(reader.nextString());
+        return compressor.decompress(compressed, 0, compressed.length);
+    }
+
+    private static <T> T decode(byte[] data, PacketCodec codec, Type type) {
+        return codec.decode(data, 0, data.length, type);
+    }
+
+    /**
+     * Reads the attributes object at the given position. The keys and values are taken from the string cache.
+     * @return The attributes, or null if the object contains escape sequences or values that are not strings
+     */
+    private static Map<String, String> scanAttributes(byte[] message, int[] position) {
+        if (!expect(message, position, '{')) return null;
+        Map<String, String> attributes = new HashMap<>();
+        if (expect(message, position, '}')) return attributes;
+        do {
+            String key = scanString(message, position);
+            if (key == null || !expect(message, position, ':')) return null;
+            String value = scanString(message, position);
+            if (value == null) return null;
+            attributes.put(key, value);
+        } while (expect(message, position, ','));
+        return expect(message, position, '}') ? attributes : null;
+    }
+
+    private static String scanString(byte[] message, int[] position) {
+        if (!expect(message, position, '"')) return null;
+        int end = stringEnd(message, position[0]);
+        if (end < 0) return null;
+        String string = StringCache.INSTANCE.get(message, position[0], end - position[0]);
+        position[0] = end + 1;
+        return string;
+    }
+
+    private static void skipWhitespace(byte[] message, int[] position) {
+        while (position[0] < message.length && isWhitespace(message[position[0]])) position[0]++;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    /**
+     * Skips whitespace, and then the given character if it is next.
+     * @return Whether the character was next
+     */
+    private static boolean expect(byte[] message, int[] position, char c) {
+        skipWhitespace(message, position);
+        if (position[0] >= message.length || message[position[0]] != c) return false;
+        position[0]++;
+        return true;
+    }
+
+    /**
+     * @param start The position after the opening quote
+     * @return The position of the closing quote, or -1 if the string contains escape sequences or does not end
+     */
+    private static int stringEnd(byte[] message, int start) {
+        for (int i = start; i < message.length; i++) {
+            if (message[i] == '"') return i;
+            if (message[i] == '\\') return -1;
+        }
+        return -1;
+    }
+
+    private static boolean nameEquals(byte[] message, int start, int end, String name) {
+        if (end - start != name.length()) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (message[start + i] != name.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Skips the JSON value at the given position, without parsing it.
+     * @return The position after the value, or -1 if the value does not end
+     */
+    private static int valueEnd(byte[] message, int start) {
+        int depth = 0;
+        boolean inString = false;
+        for (int i = start; i < message.length; i++) {
+            byte b = message[i];
+            if (inString) {
+                if (b == '\\') {
+                    i++;
+                } else if (b == '"') {
+                    inString = false;
+                    if (depth == 0) return i + 1;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                if (depth == 0) return i;
+                if (--depth == 0) return i + 1;
+            } else if (depth == 0 && (b == ',' || isWhitespace(b))) {
+                return i;
+            }
+        }
+        return depth == 0 && !inString ? message.length : -1;
+    }
+
+    /**
+     * The header of an envelope, and the position of its packet body.
+     */
+    @AllArgsConstructor
+    @Getter
+    public static class Frame {
+
+        private JedisJSONPacketHeader header;
+        // The field that holds the body: 'data', 'bin' or 'zip'
+        private String field;
+        // The position of the body in the envelope. For the 'bin' and 'zip' fields, this is the Base64 string without its quotes
+        private int offset;
+        private int length;
+
+    }
+}
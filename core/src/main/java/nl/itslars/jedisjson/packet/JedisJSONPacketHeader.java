@@ -0,0 +1,35 @@
+package nl.itslars.jedisjson.packet;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+
+@AllArgsConstructor
+@Getter
+public class JedisJSONPacketHeader {
+
+    private String id;
+    private String source;
+    private String clazz;
+    /**
+     * The type ID of the packet class, or 0 if the packet was sent by name
+     */
+    private int typeId;
+    /**
+     * The attributes that the sender attached to the packet, or null if it has none
+     */
+    private Map<String, String> attributes;
+
+    public JedisJSONPacketHeader(String id, String source, String clazz) {
+        this(id, source, clazz, 0, null);
+    }
+
+    public JedisJSONPacketHeader(String id, String source, String clazz, int typeId) {
+        this(id, source, clazz, typeId, null);
+    }
+
+    public String getAttribute(String key) {
+        return attributes == null ? null : attributes.get(key);
+    }
+}
@@ -0,0 +1,57 @@
+package nl.itslars.jedisjson.packet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads and writes bundles of envelopes that are published to the same target in one message. The layout is as follows:
+ * 1) The magic byte, which can be the first byte of neither a JSON nor a binary envelope
+ * 2) The bundle version
+ * 3) The amount of envelopes, as variable length integer
+ * 4) Every envelope, as length prefixed byte array
+ * The envelopes can be of any wire format, and are handled one by one as if they were published separately.
+ */
+public class PacketBundle {
+
+    public static final byte MAGIC = (byte) 0xFD;
+    public static final byte VERSION = 1;
+
+    public static boolean isBundle(byte[] message) {
+        return message.length > 0 && message[0] == MAGIC;
+    }
+
+    /**
+     * @param envelopes The serialized envelopes
+     * @param size The total size of the envelopes
+     * @return The serialized bundle
+     */
+    public static byte[] write(List<byte[]> envelopes, int size) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size + envelopes.size() * 3 + 8);
+        out.write(MAGIC);
+        out.write(VERSION);
+        BinaryPacketEnvelope.writeVarInt(out, envelopes.size());
+        for (byte[] envelope : envelopes) {
+            BinaryPacketEnvelope.writeVarInt(out, envelope.length);
+            out.write(envelope, 0, envelope.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Hands every envelope of the bundle to the consumer, in order.
+     * @param message The serialized bundle
+     * @param consumer The consumer of the envelopes
+     */
+    public static void read(byte[] message, Consumer<byte[]> consumer) {
+        int[] position = {2};
+        int count = BinaryPacketEnvelope.readVarInt(message, position);
+        for (int i = 0; i < count; i++) {
+            int length = BinaryPacketEnvelope.readVarInt(message, position);
+            byte[] envelope = new byte[length];
+            System.arraycopy(message, position[0], envelope, 0, length);
+            position[0] += length;
+            consumer.accept(envelope);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package nl.itslars.jedisjson.packet;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes the chunks of an envelope that is too large to publish in one message. The layout is as follows:
+ * 1) The magic byte, which can be the first byte of neither a JSON nor a binary envelope, nor a bundle
+ * 2) The chunk version
+ * 3) The ID of the transfer, which is unique per sender
+ * 4) The index of the chunk, the amount of chunks and the size of the whole envelope, as variable length integers
+ * 5) The first chunk only: the class name of the packet, so receivers can decide how to handle it before the envelope is complete
+ * 6) The next part of the envelope
+ * The chunks of a transfer are published in order, to the same target, so they arrive in order.
+ */
+@AllArgsConstructor
+@Getter
+public class PacketChunk {
+
+    public static final byte MAGIC = (byte) 0xFC;
+    public static final byte VERSION = 1;
+
+    private String transferId;
+    private int index;
+    private int count;
+    private int totalLength;
+    private String clazz;
+    private byte[] data;
+    private int offset;
+    private int length;
+
+    public static boolean isChunk(byte[] message) {
+        return message.length > 0 && message[0] == MAGIC;
+    }
+
+    public boolean isFirst() {
+        return index == 0;
+    }
+
+    public boolean isLast() {
+        return index == count - 1;
+    }
+
+    /**
+     * Splits the envelope into chunks of at most 'chunkSize' bytes of the envelope each.
+     * @param transferId The unique ID of the transfer
+     * @param clazz The class name of the packet
+     * @param message The serialized envelope
+     * @param chunkSize The maximum part of the envelope per chunk
+     * @return The serialized chunks, in order
+     */
+    public static List<byte[]> split(String transferId, String clazz, byte[] message, int chunkSize) {
+        int count = (message.length + chunkSize - 1) / chunkSize;
+        List<byte[]> chunks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int offset = i * chunkSize;
+            int length = Math.min(chunkSize, message.length - offset);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length + transferId.length() + 32);
+            out.write(MAGIC);
+            out.write(VERSION);
+            BinaryPacketEnvelope.writeString(out, transferId);
+            BinaryPacketEnvelope.writeVarInt(out, i);
+            BinaryPacketEnvelope.writeVarInt(out, count);
+            BinaryPacketEnvelope.writeVarInt(out, message.length);
+            if (i == 0) BinaryPacketEnvelope.writeString(out, clazz);
+            out.write(message, offset, length);
+            chunks.add(out.toByteArray());
+        }
+        return chunks;
+    }
+
+    /**
+     * Reads the header of a chunk. The part of the envelope is not copied.
+     * @param message The serialized chunk
+     * @return The chunk
+     */
+    public static PacketChunk read(byte[] message) {
+        int[] position = {2};
+        String transferId = BinaryPacketEnvelope.readString(message, position, false);
+        int index = BinaryPacketEnvelope.readVarInt(message, position);
+        int count = BinaryPacketEnvelope.readVarInt(message, position);
+        int totalLength = BinaryPacketEnvelope.readVarInt(message, position);
+        String clazz = index == 0 ? BinaryPacketEnvelope.readString(message, position, true) : null;
+        return new PacketChunk(transferId, index, count, totalLength, clazz, message, position[0], message.length - position[0]);
+    }
+}
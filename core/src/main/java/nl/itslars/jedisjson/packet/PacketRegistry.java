@@ -0,0 +1,86 @@
+package nl.itslars.jedisjson.packet;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the packet classes that a JedisJSON instance sends and receives.
+ * Packets are identified on the wire by their simple class name, or by their type ID if they have one.
+ * Because of that, registering two classes with the same simple name, or with the same type ID, fails.
+ * Packet classes are registered automatically when they are used, and get a type ID if they are annotated with {@link PacketTypeId}.
+ */
+public class PacketRegistry {
+
+    public static final int FIRST_USER_TYPE_ID = 16;
+
+    private Map<Class<?>, PacketType> typesByClass = new ConcurrentHashMap<>();
+    private Map<String, PacketType> typesByName = new ConcurrentHashMap<>();
+    private volatile PacketType[] typesById = new PacketType[64];
+
+    /**
+     * Registers the packet class, with the type ID of its {@link PacketTypeId} annotation if it has one.
+     * If the class is already registered, the existing type is returned.
+     * @param clazz The packet class
+     * @return The registered type
+     */
+    public PacketType register(Class<? extends JedisJSONPacket> clazz) {
+        PacketType type = typesByClass.get(clazz);
+        if (type != null) return type;
+        PacketTypeId annotation = clazz.getAnnotation(PacketTypeId.class);
+        return register(clazz, annotation == null ? 0 : annotation.value());
+    }
+
+    /**
+     * Registers the packet class with the given type ID.
+     * @param clazz The packet class
+     * @param id The type ID, or 0 to send the packet by name
+     * @return The registered type
+     */
+    public synchronized PacketType register(Class<? extends JedisJSONPacket> clazz, int id) {
+        PacketType existing = typesByClass.get(clazz);
+        if (existing != null && (id == 0 || existing.getId() == id)) return existing;
+        if (existing != null && existing.getId() != 0) {
+            throw new IllegalStateException("Packet class " + clazz.getName() + " already has type ID " + existing.getId() + ", it cannot get type ID " + id);
+        }
+
+        String name = clazz.getSimpleName();
+        PacketType sameName = typesByName.get(name);
+        if (sameName != null && sameName.getPacketClass() != clazz) {
+            throw new IllegalStateException("Packet classes " + sameName.getPacketClass().getName() + " and " + clazz.getName()
+                    + " have the same name, so they cannot be told apart on the wire");
+        }
+        if (id < 0) throw new IllegalArgumentException("Type IDs may not be negative (" + clazz.getName() + ")");
+        if (id > 0 && id < FIRST_USER_TYPE_ID && !clazz.getName().startsWith("nl.itslars.jedisjson.")) {
+            throw new IllegalArgumentException("Type IDs below " + FIRST_USER_TYPE_ID + " are reserved (" + clazz.getName() + ")");
+        }
+        PacketType sameId = get(id);
+        if (id > 0 && sameId != null) {
+            throw new IllegalStateException("Packet classes " + sameId.getPacketClass().getName() + " and " + clazz.getName() + " have the same type ID " + id);
+        }
+
+        PacketType type = new PacketType(id, name, clazz);
+        if (id > 0) {
+            // Readers use the array without a lock, so it is never written in place
+            PacketType[] types = Arrays.copyOf(typesById, Math.max(typesById.length, id + 1));
+            types[id] = type;
+            typesById = types;
+        }
+        typesByName.put(name, type);
+        typesByClass.put(clazz, type);
+        return type;
+    }
+
+    public PacketType get(Class<?> clazz) {
+        return typesByClass.get(clazz);
+    }
+
+    public PacketType get(String name) {
+        return typesByName.get(name);
+    }
+
+    public PacketType get(int id) {
+        PacketType[] types = typesById;
+        return id > 0 && id < types.length ? types[id] : null;
+    }
+}
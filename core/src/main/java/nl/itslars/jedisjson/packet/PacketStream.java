@@ -0,0 +1,19 @@
+package nl.itslars.jedisjson.packet;
+
+import com.google.gson.stream.JsonReader;
+import lombok.Getter;
+
+/**
+ * A packet that is read as JSON by its listener, instead of deserialized into its class.
+ * The header fields are set like for other packets. The reader is positioned at the serialized packet,
+ * and can only be used while the listener runs.
+ */
+public class PacketStream extends JedisJSONPacket {
+
+    @Getter
+    private transient JsonReader reader;
+
+    public PacketStream(JsonReader reader) {
+        this.reader = reader;
+    }
+}
@@ -0,0 +1,20 @@
+package nl.itslars.jedisjson.packet;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A packet class that is registered in the {@link PacketRegistry}.
+ */
+@AllArgsConstructor
+@Getter
+public class PacketType {
+
+    /**
+     * The type ID, or 0 if the type has no ID and is sent by name
+     */
+    private int id;
+    private String name;
+    private Class<? extends JedisJSONPacket> packetClass;
+
+}
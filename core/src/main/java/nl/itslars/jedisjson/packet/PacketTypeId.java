@@ -0,0 +1,18 @@
+package nl.itslars.jedisjson.packet;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Assigns a fixed type ID to a packet class. The binary wire format sends this ID instead of the class name.
+ * The ID must be the same on all clients, and type IDs below {@link PacketRegistry#FIRST_USER_TYPE_ID} are reserved for JedisJSON itself.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface PacketTypeId {
+
+    int value();
+
+}
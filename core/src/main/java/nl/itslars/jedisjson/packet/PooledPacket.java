@@ -0,0 +1,17 @@
+package nl.itslars.jedisjson.packet;
+
+/**
+ * A packet class whose instances are reused for incoming packets, instead of being allocated for every packet.
+ * A packet is only reused after it is handled by a listener that is done with it once it returns, like the listeners of
+ * onReceive, channels, conversations and work queues. Such listeners must not keep a pooled packet, hand it to another thread,
+ * or send it back. Packets of replies to sent packets are never reused.
+ * Pooling is supported by the GSON codecs, and a pooled packet class needs a constructor without arguments.
+ */
+public interface PooledPacket {
+
+    /**
+     * Resets the fields of the packet before it is reused.
+     * Fields that are absent in an incoming packet, like null fields, are not overwritten when it is decoded.
+     */
+    void reset();
+}
@@ -0,0 +1,58 @@
+package nl.itslars.jedisjson.packet;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reuses the strings of byte sequences that are read for almost every packet, like client names and packet class names.
+ * The cache is direct mapped: a sequence whose slot holds another sequence replaces it, so the cache never grows.
+ * Entries are immutable, so the cache can be shared between threads without locking.
+ */
+class StringCache {
+
+    static final StringCache INSTANCE = new StringCache(1024, 128);
+
+    private final Entry[] entries;
+    private final int maxLength;
+
+    StringCache(int size, int maxLength) {
+        this.entries = new Entry[Integer.highestOneBit(size - 1) << 1];
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Returns the string of the UTF-8 bytes in the given part of the array, from the cache if it is the same as last time.
+     */
+    String get(byte[] data, int offset, int length) {
+        if (length > maxLength) return new String(data, offset, length, StandardCharsets.UTF_8);
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) hash = 31 * hash + data[i];
+        int slot = (hash ^ (hash >>> 16)) & (entries.length - 1);
+
+        Entry entry = entries[slot];
+        if (entry != null && entry.matches(data, offset, length)) return entry.string;
+        String string = new String(data, offset, length, StandardCharsets.UTF_8);
+        byte[] bytes = new byte[length];
+        System.arraycopy(data, offset, bytes, 0, length);
+        entries[slot] = new Entry(bytes, string);
+        return string;
+    }
+
+    private static class Entry {
+
+        private final byte[] bytes;
+        private final String string;
+
+        private Entry(byte[] bytes, String string) {
+            this.bytes = bytes;
+            this.string = string;
+        }
+
+        private boolean matches(byte[] data, int offset, int length) {
+            if (bytes.length != length) return false;
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != data[offset + i]) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -3,9 +3,11 @@ package nl.itslars.jedisjson.packet.conversation;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import nl.itslars.jedisjson.packet.JedisJSONPacket;
+import nl.itslars.jedisjson.packet.PacketTypeId;
 
 @AllArgsConstructor
 @Getter
+@PacketTypeId(1)
 public class ConversationStartPacket extends JedisJSONPacket {
 
     private String clazz;
@@ -0,0 +1,82 @@
+package nl.itslars.jedisjson.publish;
+
+import nl.itslars.jedisjson.JedisJSONConfig;
+import nl.itslars.jedisjson.dispatch.Priority;
+import redis.clients.jedis.JedisPool;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Publishes packets asynchronously, so that a JedisJSON instance can be used by multiple threads at the same time.
+ * Packets are queued, and picked up by publisher threads that each publish whatever is queued in one pipelined round trip.
+ * The publisher thread is selected by the target, so packets to the same target are published in the order they were sent.
+ * With priority lanes, packets of the high lane have a publisher thread of their own, so they are not queued behind bulk packets.
+ */
+public class PacketPublisher {
+
+    private PublisherThread[] threads;
+    // The last thread publishes the high lane, if priority lanes are enabled
+    private int laneThreads;
+
+    public PacketPublisher(JedisPool jedisPool, JedisJSONConfig config) {
+        this.laneThreads = config.getPublisherThreads();
+        this.threads = new PublisherThread[laneThreads + (config.isPriorityLanes() ? 1 : 0)];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new PublisherThread(jedisPool, config, i < laneThreads ? "JedisJSON-Publisher-" + i : "JedisJSON-Publisher-High");
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Queues the message to be published on the given target.
+     * @param target The target channel
+     * @param message The message
+     * @return A future that completes with the amount of clients that received the message
+     */
+    public CompletableFuture<Long> publish(byte[] target, byte[] message) {
+        int thread = (Arrays.hashCode(target) & Integer.MAX_VALUE) % laneThreads;
+        return threads[thread].publish(target, message);
+    }
+
+    /**
+     * Queues the message to be published on the given target, by the publisher thread of its lane.
+     * @param target The Redis channel of the lane of the target
+     * @param message The message
+     * @param priority The lane of the message
+     * @return A future that completes with the amount of clients that received the message
+     */
+    public CompletableFuture<Long> publish(byte[] target, byte[] message, Priority priority) {
+        if (priority == Priority.HIGH && threads.length > laneThreads) return threads[laneThreads].publish(target, message);
+        return publish(target, message);
+    }
+
+    /**
+     * Queues the message to be added to the given stream. Messages to the same stream are added in the order they were sent.
+     * @param stream The stream key
+     * @param message The message
+     * @param maxLength The length to which the stream is trimmed (approximately), or Long.MAX_VALUE to never trim it
+     * @return A future that completes with the ID of the stream entry
+     */
+    public CompletableFuture<String> append(byte[] stream, byte[] message, long maxLength) {
+        int thread = (Arrays.hashCode(stream) & Integer.MAX_VALUE) % laneThreads;
+        return threads[thread].append(stream, message, maxLength);
+    }
+
+    /**
+     * @return The amount of messages that are waiting to be published
+     */
+    public int getQueueSize() {
+        int size = 0;
+        for (PublisherThread thread : threads) size += thread.getQueueSize();
+        return size;
+    }
+
+    /**
+     * Publishes the messages that are still queued, and closes the connections of the publisher threads.
+     */
+    public void shutdown() {
+        for (PublisherThread thread : threads) thread.shutdown();
+        for (PublisherThread thread : threads) thread.awaitShutdown();
+    }
+}
@@ -0,0 +1,245 @@
+package nl.itslars.jedisjson.publish;
+
+import lombok.AllArgsConstructor;
+import nl.itslars.jedisjson.JedisJSONConfig;
+import nl.itslars.jedisjson.packet.PacketBundle;
+import nl.itslars.jedisjson.stream.WorkQueue;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+class PublisherThread extends Thread {
+
+    private static final Logger LOGGER = Logger.getLogger(PublisherThread.class.getName());
+    // The maximum stream length of messages that are published instead of added to a stream
+    private static final long PUBLISH = -1;
+    private static final byte[] NEW_ENTRY_ID = SafeEncoder.encode("*");
+
+    private JedisPool jedisPool;
+    private BlockingQueue<PendingMessage> queue;
+    private int maxBatch;
+    private long lingerNanos;
+    private int maxBundleBytes;
+    private Jedis jedis;
+    private volatile boolean running = true;
+
+    PublisherThread(JedisPool jedisPool, JedisJSONConfig config, String name) {
+        super(name);
+        setDaemon(true);
+        this.jedisPool = jedisPool;
+        this.queue = new ArrayBlockingQueue<>(config.getPublishQueueCapacity());
+        this.maxBatch = config.getMaxPublishBatch();
+        this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(config.getPublishLingerMicros());
+        this.maxBundleBytes = config.getMaxBundleBytes();
+    }
+
+    CompletableFuture<Long> publish(byte[] target, byte[] message) {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        queue(new PendingMessage(target, message, PUBLISH, future, null));
+        return future;
+    }
+
+    CompletableFuture<String> append(byte[] stream, byte[] message, long maxLength) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        queue(new PendingMessage(stream, message, maxLength, future, null));
+        return future;
+    }
+
+    private void queue(PendingMessage message) {
+        if (!running) {
+            message.future.completeExceptionally(new IllegalStateException("The publisher has been shut down"));
+            return;
+        }
+        try {
+            queue.put(message);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            message.future.completeExceptionally(e);
+        }
+    }
+
+    int getQueueSize() {
+        return queue.size();
+    }
+
+    void shutdown() {
+        running = false;
+        interrupt();
+    }
+
+    void awaitShutdown() {
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        List<PendingMessage> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                if (!collect(batch)) continue;
+            } catch (InterruptedException e) {
+                // Interrupted by a shutdown, the remaining messages are still published
+                queue.drainTo(batch, maxBatch - batch.size());
+                if (batch.isEmpty()) continue;
+            }
+            flush(batch);
+            batch.clear();
+        }
+        if (jedis != null) jedis.close();
+
+        // Messages that were queued while the thread was stopping can no longer be published
+        PendingMessage message;
+        while ((message = queue.poll()) != null) {
+            message.future.completeExceptionally(new IllegalStateException("The publisher has been shut down"));
+        }
+    }
+
+    /**
+     * Waits for the first message, and then adds everything that is queued (or arrives within the linger time) to the batch.
+     * @return Whether there is anything to publish
+     */
+    private boolean collect(List<PendingMessage> batch) throws InterruptedException {
+        PendingMessage first = running ? queue.take() : queue.poll();
+        if (first == null) return false;
+        batch.add(first);
+        queue.drainTo(batch, maxBatch - 1);
+        if (lingerNanos <= 0) return true;
+
+        long deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < maxBatch) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) break;
+            PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) break;
+            batch.add(next);
+            queue.drainTo(batch, maxBatch - batch.size());
+        }
+        return true;
+    }
+
+    /**
+     * Publishes the batch in one round trip, and completes the futures of the messages.
+     * Stream messages are added with XADD in the same round trip, trimming the stream to about its maximum length.
+     * If the connection broke, a new connection is used for the next batch.
+     */
+    private void flush(List<PendingMessage> batch) {
+        List<PendingMessage> messages = maxBundleBytes > 0 ? bundle(batch) : batch;
+        List<Response<?>> responses = new ArrayList<>(messages.size());
+        try {
+            if (jedis == null) jedis = jedisPool.getResource();
+            Pipeline pipeline = jedis.pipelined();
+            for (PendingMessage message : messages) {
+                if (message.maxLength == PUBLISH) {
+                    responses.add(pipeline.publish(message.target, message.message));
+                } else {
+                    responses.add(pipeline.xadd(message.target, NEW_ENTRY_ID, Collections.singletonMap(WorkQueue.PACKET_FIELD, message.message), message.maxLength, true));
+                }
+            }
+            pipeline.sync();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Could not publish " + batch.size() + " packets", e);
+            for (PendingMessage message : batch) message.future.completeExceptionally(e);
+            if (jedis != null) jedis.close();
+            jedis = null;
+            return;
+        }
+        // A command can get an error reply on its own, like an XADD to a key of another type, which fails only that message
+        for (int i = 0; i < messages.size(); i++) {
+            PendingMessage message = messages.get(i);
+            try {
+                message.complete(responses.get(i).get());
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Could not publish a packet", e);
+                message.fail(e);
+            }
+        }
+    }
+
+    /**
+     * Bundles the published messages of the batch per target, into bundles of at most the maximum bundle size.
+     * The messages to a target stay in order, and a message that is the only one in its bundle is published as it is.
+     * @return The messages that should be published instead of the batch
+     */
+    private List<PendingMessage> bundle(List<PendingMessage> batch) {
+        List<PendingMessage> messages = new ArrayList<>(batch.size());
+        Map<ByteBuffer, List<PendingMessage>> targets = new LinkedHashMap<>();
+        for (PendingMessage message : batch) {
+            if (message.maxLength == PUBLISH) {
+                targets.computeIfAbsent(ByteBuffer.wrap(message.target), target -> new ArrayList<>()).add(message);
+            } else {
+                messages.add(message);
+            }
+        }
+
+        for (List<PendingMessage> targetMessages : targets.values()) {
+            List<PendingMessage> bundle = new ArrayList<>();
+            int size = 0;
+            for (PendingMessage message : targetMessages) {
+                if (!bundle.isEmpty() && size + message.message.length > maxBundleBytes) {
+                    messages.add(toBundle(bundle, size));
+                    bundle = new ArrayList<>();
+                    size = 0;
+                }
+                bundle.add(message);
+                size += message.message.length;
+            }
+            messages.add(toBundle(bundle, size));
+        }
+        return messages;
+    }
+
+    private static PendingMessage toBundle(List<PendingMessage> bundle, int size) {
+        if (bundle.size() == 1) return bundle.get(0);
+        List<byte[]> envelopes = new ArrayList<>(bundle.size());
+        for (PendingMessage message : bundle) envelopes.add(message.message);
+        return new PendingMessage(bundle.get(0).target, PacketBundle.write(envelopes, size), PUBLISH, null, bundle);
+    }
+
+    @AllArgsConstructor
+    private static class PendingMessage {
+
+        private byte[] target;
+        private byte[] message;
+        private long maxLength;
+        private CompletableFuture<?> future;
+        // The messages in this bundle, or null if this is a single message
+        private List<PendingMessage> bundled;
+
+        @SuppressWarnings("unchecked")
+        private void complete(Object response) {
+            if (bundled != null) {
+                for (PendingMessage message : bundled) message.complete(response);
+                return;
+            }
+            // Stream entry IDs are returned as bytes
+            ((CompletableFuture<Object>) future).complete(response instanceof byte[] ? SafeEncoder.encode((byte[]) response) : response);
+        }
+
+        private void fail(Throwable throwable) {
+            if (bundled != null) {
+                for (PendingMessage message : bundled) message.fail(throwable);
+                return;
+            }
+            future.completeExceptionally(throwable);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package nl.itslars.jedisjson.service;
+
+/**
+ * How a service group picks the instance that a request is sent to.
+ * Both strategies compare two random instances, instead of all instances, so that callers with the same
+ * statistics do not all pick the same instance at the same time.
+ */
+public enum LoadBalancing {
+
+    /**
+     * Picks the instance with the least requests of this client that are still waiting for a reply.
+     */
+    LEAST_OUTSTANDING,
+    /**
+     * Picks the instance with the lowest moving average of its reply times, multiplied by its outstanding requests plus one.
+     * Slow instances receive less requests, and timed out requests count as a reply after the full timeout.
+     */
+    EWMA
+
+}
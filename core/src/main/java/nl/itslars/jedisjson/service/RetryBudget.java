@@ -0,0 +1,29 @@
+package nl.itslars.jedisjson.service;
+
+/**
+ * Limits the retries of a service group to a ratio of its requests, so that retries do not multiply the load
+ * on a group that is overloaded already. Every request deposits the ratio, and every retry withdraws one.
+ * The balance starts at, and is capped at, the reserve, which is the amount of retries that can be done in a burst.
+ */
+class RetryBudget {
+
+    private double ratio;
+    private double reserve;
+    private double balance;
+
+    RetryBudget(double ratio, int reserve) {
+        this.ratio = ratio;
+        this.reserve = reserve;
+        this.balance = reserve;
+    }
+
+    synchronized void deposit() {
+        balance = Math.min(reserve, balance + ratio);
+    }
+
+    synchronized boolean withdraw() {
+        if (balance < 1) return false;
+        balance--;
+        return true;
+    }
+}
@@ -0,0 +1,169 @@
+package nl.itslars.jedisjson.service;
+
+import lombok.Getter;
+import lombok.Setter;
+import nl.itslars.jedisjson.JedisJSON;
+import nl.itslars.jedisjson.JedisJSONConfig;
+import nl.itslars.jedisjson.listeners.types.SingleResponseListener;
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The instances of a service, as seen by a client that sends requests to them.
+ * Instances join a group with {@link JedisJSON#joinServiceGroup(String)}, and reply to requests with a listener
+ * that is registered with {@link JedisJSON#onReceive(Class, java.util.function.Function)}.
+ * The members of the group are read from Redis at the heartbeat interval, and every request is sent to one of them.
+ * A request that times out is sent to another instance, as long as the retry budget of the group allows it.
+ */
+public class ServiceGroup {
+
+    private JedisJSON client;
+    @Getter
+    private String name;
+    @Getter
+    @Setter
+    private volatile LoadBalancing loadBalancing;
+    /**
+     * The maximum amount of instances that a request is sent to, before it fails.
+     */
+    @Getter
+    @Setter
+    private volatile int maxAttempts;
+    private RetryBudget retryBudget;
+    private volatile ServiceInstance[] instances = new ServiceInstance[0];
+
+    public ServiceGroup(JedisJSON client, String name) {
+        this.client = client;
+        this.name = name;
+
+        JedisJSONConfig config = client.getConfig();
+        this.loadBalancing = config.getServiceLoadBalancing();
+        this.maxAttempts = config.getServiceMaxAttempts();
+        this.retryBudget = new RetryBudget(config.getServiceRetryRatio(), config.getServiceRetryReserve());
+    }
+
+    /**
+     * Replaces the instances of the group with the given members. Instances that stay in the group keep their statistics.
+     */
+    synchronized void update(Collection<String> members) {
+        Map<String, ServiceInstance> current = new HashMap<>();
+        for (ServiceInstance instance : instances) current.put(instance.getName(), instance);
+        ServiceInstance[] updated = new ServiceInstance[members.size()];
+        int i = 0;
+        for (String member : members) updated[i++] = current.getOrDefault(member, new ServiceInstance(member));
+        instances = updated;
+    }
+
+    /**
+     * @return The instances of the group, as they were read from Redis last
+     */
+    public List<ServiceInstance> getInstances() {
+        return Collections.unmodifiableList(Arrays.asList(instances));
+    }
+
+    public <T extends JedisJSONPacket, R extends JedisJSONPacket> CompletableFuture<R> request(T packet, Class<R> responseType) {
+        return request(packet, responseType, SingleResponseListener.DEFAULT_SINGLE_RESPONSE_TIMEOUT);
+    }
+
+    /**
+     * Sends the packet to one instance of the group, and returns a future of the reply.
+     * If the instance does not reply within the timeout, the packet is sent to an instance that it was not sent to yet,
+     * until the maximum amount of attempts is reached or the retry budget is used up.
+     * The future completes exceptionally with the last {@link TimeoutException} in that case,
+     * or with an IllegalStateException if the group has no instances left to try.
+     * Cancelling the future stops waiting for the reply.
+     * @param packet The packet
+     * @param responseType The class of the reply
+     * @param timeout The time in milliseconds to wait for the reply of one instance
+     * @param <T> The packet type
+     * @param <R> The reply type
+     * @return A future that completes with the reply
+     */
+    public <T extends JedisJSONPacket, R extends JedisJSONPacket> CompletableFuture<R> request(T packet, Class<R> responseType, int timeout) {
+        retryBudget.deposit();
+        Request<T, R> request = new Request<>(packet, responseType, timeout);
+        request.attempt(null);
+        return request.result;
+    }
+
+    /**
+     * Picks two random instances that were not tried yet, and returns the one with the lowest cost.
+     * @return The instance, or null if all instances were tried
+     */
+    private ServiceInstance select(List<ServiceInstance> tried) {
+        ServiceInstance[] instances = this.instances;
+        List<ServiceInstance> candidates = new ArrayList<>(instances.length);
+        for (ServiceInstance instance : instances) {
+            if (!tried.contains(instance)) candidates.add(instance);
+        }
+        if (candidates.size() <= 1) return candidates.isEmpty() ? null : candidates.get(0);
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) second++;
+        ServiceInstance a = candidates.get(first);
+        ServiceInstance b = candidates.get(second);
+        LoadBalancing loadBalancing = this.loadBalancing;
+        return a.cost(loadBalancing) <= b.cost(loadBalancing) ? a : b;
+    }
+
+    private class Request<T extends JedisJSONPacket, R extends JedisJSONPacket> {
+
+        private T packet;
+        private Class<R> responseType;
+        private int timeout;
+        private CompletableFuture<R> result = new CompletableFuture<>();
+        private List<ServiceInstance> tried = new ArrayList<>();
+        private volatile CompletableFuture<R> current;
+
+        private Request(T packet, Class<R> responseType, int timeout) {
+            this.packet = packet;
+            this.responseType = responseType;
+            this.timeout = timeout;
+            result.whenComplete((response, throwable) -> {
+                CompletableFuture<R> current = this.current;
+                if (result.isCancelled() && current != null) current.cancel(false);
+            });
+        }
+
+        private void attempt(Throwable previousFailure) {
+            ServiceInstance instance = select(tried);
+            if (instance == null) {
+                result.completeExceptionally(previousFailure != null ? previousFailure : new IllegalStateException("Service group " + name + " has no instances"));
+                return;
+            }
+            tried.add(instance);
+
+            instance.onSent();
+            long start = System.nanoTime();
+            current = client.request(instance.getName(), packet, responseType, timeout);
+            current.whenComplete((response, throwable) -> {
+                instance.onFinished(System.nanoTime() - start);
+                if (throwable == null) {
+                    result.complete(response);
+                    return;
+                }
+
+                Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                if (cause instanceof TimeoutException && !result.isDone() && tried.size() < maxAttempts && tried.size() < instances.length && retryBudget.withdraw()) {
+                    attempt(cause);
+                } else {
+                    result.completeExceptionally(cause);
+                }
+            });
+            if (result.isCancelled()) current.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package nl.itslars.jedisjson.service;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A member of a service group, with the statistics of the requests that this client sent to it.
+ */
+public class ServiceInstance {
+
+    // The weight of a new reply time in the moving average
+    private static final double EWMA_WEIGHT = 0.2;
+
+    /**
+     * The client name of the instance.
+     */
+    @Getter
+    private String name;
+    private AtomicInteger outstanding = new AtomicInteger();
+    // The moving average of the reply times in nanoseconds, or 0 before the first reply
+    private volatile double averageNanos;
+
+    ServiceInstance(String name) {
+        this.name = name;
+    }
+
+    void onSent() {
+        outstanding.incrementAndGet();
+    }
+
+    /**
+     * Updates the statistics when a request is answered or timed out.
+     * @param nanos The time between sending the request and the reply or timeout
+     */
+    synchronized void onFinished(long nanos) {
+        outstanding.decrementAndGet();
+        averageNanos = averageNanos == 0 ? nanos : averageNanos + EWMA_WEIGHT * (nanos - averageNanos);
+    }
+
+    double cost(LoadBalancing loadBalancing) {
+        int requests = outstanding.get();
+        return loadBalancing == LoadBalancing.EWMA ? averageNanos * (requests + 1) : requests;
+    }
+
+    /**
+     * @return The amount of requests to this instance that are waiting for a reply
+     */
+    public int getOutstandingRequests() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return The moving average of the reply times of this instance in milliseconds, or 0 before the first reply
+     */
+    public double getAverageReplyMillis() {
+        return averageNanos / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
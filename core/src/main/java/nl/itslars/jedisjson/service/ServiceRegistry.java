@@ -0,0 +1,120 @@
+package nl.itslars.jedisjson.service;
+
+import nl.itslars.jedisjson.JedisJSON;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the service group memberships of a client alive, and the members of the groups that it sends requests to up to date.
+ * Every group is a sorted set in Redis, with the client names of its members, scored by the time at which their membership expires.
+ * Members renew their score at the heartbeat interval, so the members of a client that stopped without leaving
+ * expire after the TTL. The clocks of the clients should therefore not differ more than the TTL minus the heartbeat interval.
+ */
+public class ServiceRegistry extends Thread {
+
+    private static final Logger LOGGER = Logger.getLogger(ServiceRegistry.class.getName());
+    private static final String KEY_PREFIX = "jedisjson:service:";
+
+    private JedisJSON client;
+    private JedisPool jedisPool;
+    private long heartbeatMillis;
+    private long ttlMillis;
+    private Set<String> joinedGroups = ConcurrentHashMap.newKeySet();
+    private Map<String, ServiceGroup> groups = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+
+    public ServiceRegistry(JedisJSON client, JedisPool jedisPool) {
+        super("JedisJSON-ServiceRegistry");
+        setDaemon(true);
+        this.client = client;
+        this.jedisPool = jedisPool;
+        this.heartbeatMillis = client.getConfig().getServiceHeartbeatMillis();
+        this.ttlMillis = client.getConfig().getServiceTtlMillis();
+    }
+
+    /**
+     * Adds this client to the group, at once, and keeps it in the group until it leaves or shuts down.
+     */
+    public void join(String group) {
+        if (!joinedGroups.add(group)) return;
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.zadd(KEY_PREFIX + group, System.currentTimeMillis() + ttlMillis, client.getClientName());
+        }
+    }
+
+    public void leave(String group) {
+        if (!joinedGroups.remove(group)) return;
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.zrem(KEY_PREFIX + group, client.getClientName());
+        }
+    }
+
+    /**
+     * Returns the group with the given name, and reads its members at once if it is not watched yet.
+     */
+    public ServiceGroup getGroup(String name) {
+        ServiceGroup group = groups.get(name);
+        if (group != null) return group;
+        group = new ServiceGroup(client, name);
+        try (Jedis jedis = jedisPool.getResource()) {
+            refresh(jedis, group, System.currentTimeMillis());
+        }
+        ServiceGroup existing = groups.putIfAbsent(name, group);
+        return existing == null ? group : existing;
+    }
+
+    /**
+     * Stops the heartbeats, and removes this client from the groups that it joined.
+     */
+    public void shutdown() {
+        running = false;
+        interrupt();
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (String group : joinedGroups) {
+            try {
+                leave(group);
+            } catch (JedisException e) {
+                LOGGER.log(Level.WARNING, "Could not leave service group " + group, e);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try (Jedis jedis = jedisPool.getResource()) {
+                long now = System.currentTimeMillis();
+                for (String group : joinedGroups) jedis.zadd(KEY_PREFIX + group, now + ttlMillis, client.getClientName());
+                for (ServiceGroup group : groups.values()) refresh(jedis, group, now);
+            } catch (JedisException e) {
+                LOGGER.log(Level.WARNING, "Could not update the service groups", e);
+            }
+
+            try {
+                Thread.sleep(heartbeatMillis);
+            } catch (InterruptedException e) {
+                // Shutting down
+            }
+        }
+    }
+
+    /**
+     * Removes the expired members of the group from Redis, and updates the group with the remaining members.
+     */
+    private void refresh(Jedis jedis, ServiceGroup group, long now) {
+        String key = KEY_PREFIX + group.getName();
+        jedis.zremrangeByScore(key, 0, now);
+        group.update(jedis.zrangeByScore(key, now, Double.POSITIVE_INFINITY));
+    }
+}
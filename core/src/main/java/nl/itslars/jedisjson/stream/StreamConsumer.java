@@ -0,0 +1,223 @@
+package nl.itslars.jedisjson.stream;
+
+import nl.itslars.jedisjson.JedisJSON;
+import nl.itslars.jedisjson.JedisJSONConfig;
+import nl.itslars.jedisjson.listeners.types.JedisJSONPacketListener;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Consumes a work queue stream in a consumer group, with XREADGROUP, XACK and XCLAIM.
+ * Every consumer has its own connection, because a blocking read holds the connection until entries arrive.
+ * Entries are read and acknowledged in batches, and handled on the consumer thread in between.
+ * After (re)connecting, the consumer first handles the entries that it read before but did not acknowledge.
+ */
+public class StreamConsumer extends Thread {
+
+    private static final Logger LOGGER = Logger.getLogger(StreamConsumer.class.getName());
+    private static final byte[] NEW_ENTRIES = SafeEncoder.encode(">");
+    private static final byte[] FIRST_ID = SafeEncoder.encode("0");
+    private static final byte[] MIN_ID = SafeEncoder.encode("-");
+    private static final byte[] MAX_ID = SafeEncoder.encode("+");
+
+    private JedisJSON client;
+    private String host;
+    private int port;
+    private String name;
+    private byte[] stream;
+    private byte[] group;
+    private byte[] consumerName;
+    private JedisJSONPacketListener<?> listener;
+
+    private int batchSize;
+    private long blockMillis;
+    private long claimIdleMillis;
+    private long claimIntervalMillis;
+    private int maxDeliveries;
+
+    private Jedis jedis;
+    // The ID after which the unacknowledged entries of this consumer are read again, or null when they are all handled
+    private byte[] recoverFrom;
+    private long nextClaim;
+    private volatile boolean running = true;
+
+    public StreamConsumer(JedisJSON client, String host, int port, String name, String group, JedisJSONPacketListener<?> listener) {
+        super("JedisJSON-Queue-" + name + "-" + group);
+        setDaemon(true);
+        this.client = client;
+        this.host = host;
+        this.port = port;
+        this.name = name;
+        this.stream = SafeEncoder.encode(name);
+        this.group = SafeEncoder.encode(group);
+        this.consumerName = SafeEncoder.encode(client.getClientName());
+        this.listener = listener;
+
+        JedisJSONConfig config = client.getConfig();
+        this.batchSize = config.getStreamBatchSize();
+        this.blockMillis = config.getStreamBlockMillis();
+        this.claimIdleMillis = config.getStreamClaimIdleMillis();
+        this.claimIntervalMillis = config.getStreamClaimIntervalMillis();
+        this.maxDeliveries = config.getStreamMaxDeliveries();
+    }
+
+    /**
+     * Stops the consumer after the current batch. A blocking read is not interrupted, so this takes up to the block time.
+     */
+    public void shutdown() {
+        running = false;
+    }
+
+    public void awaitShutdown() {
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                if (jedis == null) connect();
+                if (System.currentTimeMillis() >= nextClaim) {
+                    claim();
+                    nextClaim = System.currentTimeMillis() + claimIntervalMillis;
+                }
+                read();
+            } catch (JedisException e) {
+                if (!running) break;
+                LOGGER.log(Level.WARNING, "Could not consume work queue " + name + ", reconnecting", e);
+                disconnect();
+                try {
+                    Thread.sleep(blockMillis);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+            }
+        }
+        disconnect();
+    }
+
+    private void connect() {
+        jedis = new Jedis(host, port, 5000);
+        try {
+            // A new group starts at the first entry, so packets that were added before any consumer started are handled as well
+            jedis.xgroupCreate(stream, group, FIRST_ID, true);
+        } catch (JedisDataException e) {
+            if (e.getMessage() == null || !e.getMessage().startsWith("BUSYGROUP")) throw e;
+        }
+        recoverFrom = FIRST_ID;
+    }
+
+    private void disconnect() {
+        if (jedis != null) jedis.close();
+        jedis = null;
+    }
+
+    /**
+     * Reads and handles the next batch. While recovering, this reads the unacknowledged entries of this consumer without blocking,
+     * otherwise it blocks until new entries arrive, or the block time passes.
+     */
+    @SuppressWarnings("unchecked")
+    private void read() {
+        byte[] from = recoverFrom == null ? NEW_ENTRIES : recoverFrom;
+        List<Object> reply = (List<Object>) (List<?>) jedis.xreadGroup(group, consumerName, batchSize,
+                recoverFrom == null ? blockMillis : 0, false, Collections.singletonMap(stream, from));
+        // The reply has one element per stream, with the stream key and its entries
+        List<Object> entries = reply == null || reply.isEmpty() ? Collections.emptyList() : (List<Object>) ((List<Object>) reply.get(0)).get(1);
+        if (recoverFrom != null) {
+            if (entries.isEmpty()) {
+                recoverFrom = null;
+                return;
+            }
+            recoverFrom = (byte[]) ((List<Object>) entries.get(entries.size() - 1)).get(0);
+        }
+        handle(entries);
+    }
+
+    /**
+     * Claims the entries of the group that have been pending for longer than the claim idle time, and handles them.
+     * These are entries of consumers that stopped, or that threw an exception.
+     * Claimed entries that were delivered too often are dropped. They are claimed first, so only one consumer drops them.
+     */
+    @SuppressWarnings("unchecked")
+    private void claim() {
+        List<Object> pending = (List<Object>) (List<?>) jedis.xpending(stream, group, MIN_ID, MAX_ID, batchSize, null);
+        List<byte[]> ids = new ArrayList<>();
+        Set<String> exhausted = new HashSet<>();
+        for (Object entry : pending) {
+            // Every pending entry consists of the ID, the consumer, the idle time and the amount of deliveries
+            List<Object> fields = (List<Object>) entry;
+            if ((Long) fields.get(2) < claimIdleMillis) continue;
+            byte[] id = (byte[]) fields.get(0);
+            ids.add(id);
+            if (maxDeliveries > 0 && (Long) fields.get(3) >= maxDeliveries) exhausted.add(SafeEncoder.encode(id));
+        }
+        if (ids.isEmpty()) return;
+
+        List<Object> claimed = (List<Object>) (List<?>) jedis.xclaim(stream, group, consumerName, claimIdleMillis, 0, 0, false, ids.toArray(new byte[0][]));
+        if (exhausted.isEmpty()) {
+            handle(claimed);
+            return;
+        }
+        List<Object> entries = new ArrayList<>(claimed.size());
+        List<byte[]> dropped = new ArrayList<>();
+        for (Object entry : claimed) {
+            byte[] id = entry == null ? null : (byte[]) ((List<Object>) entry).get(0);
+            if (id != null && exhausted.contains(SafeEncoder.encode(id))) {
+                dropped.add(id);
+            } else {
+                entries.add(entry);
+            }
+        }
+        if (!dropped.isEmpty()) {
+            LOGGER.warning("Dropping " + dropped.size() + " entries of work queue " + name + " after " + maxDeliveries + " deliveries");
+            jedis.xack(stream, group, dropped.toArray(new byte[0][]));
+            for (int i = 0; i < dropped.size(); i++) client.getMetrics().onDropped((Class<?>) listener.getPacketType());
+        }
+        handle(entries);
+    }
+
+    /**
+     * Handles the entries, and acknowledges all entries that did not throw an exception in one call.
+     * Entries without a packet, like entries that were deleted while they were pending, are acknowledged as well.
+     */
+    @SuppressWarnings("unchecked")
+    private void handle(List<Object> entries) {
+        List<byte[]> handled = new ArrayList<>(entries.size());
+        for (Object entry : entries) {
+            if (entry == null) continue;
+            List<Object> fields = (List<Object>) entry;
+            byte[] id = (byte[]) fields.get(0);
+            byte[] packet = getPacket((List<Object>) fields.get(1));
+            try {
+                if (packet != null) client.getJedisPacketHandler().onStreamEntry(packet, listener);
+                handled.add(id);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Could not handle entry " + SafeEncoder.encode(id) + " of work queue " + name + ", it will be delivered again", e);
+            }
+        }
+        if (!handled.isEmpty()) jedis.xack(stream, group, handled.toArray(new byte[0][]));
+    }
+
+    private static byte[] getPacket(List<Object> fields) {
+        if (fields == null) return null;
+        for (int i = 0; i + 1 < fields.size(); i += 2) {
+            if (Arrays.equals((byte[]) fields.get(i), WorkQueue.PACKET_FIELD)) return (byte[]) fields.get(i + 1);
+        }
+        return null;
+    }
+}
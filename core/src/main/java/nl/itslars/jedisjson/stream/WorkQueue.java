@@ -0,0 +1,81 @@
+package nl.itslars.jedisjson.stream;
+
+import lombok.Getter;
+import lombok.Setter;
+import nl.itslars.jedisjson.JedisJSON;
+import nl.itslars.jedisjson.codec.PacketCodec;
+import nl.itslars.jedisjson.listeners.types.NewIncomingPacketListener;
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * A work queue on top of a Redis stream. Unlike a channel, every packet is handled by one consumer of each consumer group,
+ * and packets are kept in the stream until they are handled, also while no consumer is running.
+ * Packets that were not acknowledged by a consumer that stopped are claimed by another consumer of the group.
+ * Work queue packets always go through Redis, also between clients in the same JVM.
+ * @param <T> The packet type
+ */
+public class WorkQueue<T extends JedisJSONPacket> {
+
+    /**
+     * The field of a stream entry that holds the packet envelope.
+     */
+    public static final byte[] PACKET_FIELD = SafeEncoder.encode("packet");
+
+    private JedisJSON client;
+    private PacketCodec codec;
+    private Class<T> packetClass;
+    @Getter
+    private String name;
+    /**
+     * The length to which the stream is trimmed (approximately) when a packet is added, or 0 to never trim it.
+     */
+    @Getter
+    @Setter
+    private long maxLength;
+    private Set<String> groups = ConcurrentHashMap.newKeySet();
+
+    public WorkQueue(JedisJSON client, PacketCodec codec, Class<T> packetClass, String name, long maxLength) {
+        this.client = client;
+        this.codec = codec;
+        this.packetClass = packetClass;
+        this.name = name;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Adds the packet to the queue.
+     * @param packet The packet
+     * @return A future that completes with the ID of the stream entry
+     */
+    public CompletableFuture<String> send(T packet) {
+        return client.sendToQueue(name, packet, codec, maxLength);
+    }
+
+    /**
+     * Compresses the packets that are added to this queue, when they are at least 'threshold' bytes large after serialization.
+     * @param threshold The size in bytes from which packets are compressed
+     */
+    public void enableCompression(int threshold) {
+        client.enableCompression(name, threshold);
+    }
+
+    /**
+     * Starts consuming the queue in the given consumer group. The packets of a group are divided over its consumers,
+     * so clients that consume in the same group compete for the packets, and every group receives every packet.
+     * A new group starts at the beginning of the stream. A packet is acknowledged once the consumer returns,
+     * so a packet for which the consumer throws an exception is delivered again later.
+     * This client consumes the queue with one thread per group, under its client name.
+     * @param group The name of the consumer group
+     * @param consumer The consumer of the packets
+     */
+    public void onReceive(String group, Consumer<T> consumer) {
+        if (!groups.add(group)) throw new IllegalStateException("Work queue " + name + " is already consumed in group " + group);
+        client.consumeQueue(name, group, new NewIncomingPacketListener<>(codec, packetClass, consumer));
+    }
+}
@@ -0,0 +1,52 @@
+package nl.itslars.jedisjson.timeout;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A task that is scheduled on the {@link TimeoutScheduler}.
+ */
+public class Timeout {
+
+    private static final int WAITING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private TimeoutScheduler scheduler;
+    Runnable task;
+    long deadline;
+    private AtomicInteger state = new AtomicInteger(WAITING);
+
+    // Only accessed by the scheduler thread
+    long remainingRounds;
+    TimeoutBucket bucket;
+    Timeout previous;
+    Timeout next;
+
+    Timeout(TimeoutScheduler scheduler, Runnable task, long deadline) {
+        this.scheduler = scheduler;
+        this.task = task;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Cancels the timeout, if it has not expired yet.
+     * @return Whether the timeout was cancelled. If false, the task has already run (or is running), or was already cancelled.
+     */
+    public boolean cancel() {
+        if (!state.compareAndSet(WAITING, CANCELLED)) return false;
+        scheduler.cancelled(this);
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return state.get() == CANCELLED;
+    }
+
+    public boolean isExpired() {
+        return state.get() == EXPIRED;
+    }
+
+    boolean expire() {
+        return state.compareAndSet(WAITING, EXPIRED);
+    }
+}
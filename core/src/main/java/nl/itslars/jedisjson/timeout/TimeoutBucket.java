@@ -0,0 +1,31 @@
+package nl.itslars.jedisjson.timeout;
+
+/**
+ * A doubly linked list of the timeouts in one bucket of the wheel. Only accessed by the scheduler thread.
+ */
+class TimeoutBucket {
+
+    Timeout head;
+    private Timeout tail;
+
+    void add(Timeout timeout) {
+        timeout.bucket = this;
+        if (head == null) {
+            head = tail = timeout;
+        } else {
+            tail.next = timeout;
+            timeout.previous = tail;
+            tail = timeout;
+        }
+    }
+
+    void remove(Timeout timeout) {
+        if (timeout.previous != null) timeout.previous.next = timeout.next;
+        if (timeout.next != null) timeout.next.previous = timeout.previous;
+        if (timeout == head) head = timeout.next;
+        if (timeout == tail) tail = timeout.previous;
+        timeout.previous = null;
+        timeout.next = null;
+        timeout.bucket = null;
+    }
+}
@@ -0,0 +1,147 @@
+package nl.itslars.jedisjson.timeout;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A hashed timing wheel, that runs all timeouts of a JedisJSON instance on one thread.
+ * Scheduling and cancelling a timeout are O(1), so a large amount of outstanding timeouts does not need a thread per timeout.
+ * Timeouts are checked once per tick, so they may fire up to one tick late, but never early.
+ * Timeout tasks run on the scheduler thread, and should therefore be short.
+ */
+public class TimeoutScheduler {
+
+    private static final Logger LOGGER = Logger.getLogger(TimeoutScheduler.class.getName());
+
+    private long tickNanos;
+    private TimeoutBucket[] wheel;
+    private int mask;
+    private Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+    private Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private AtomicLong timeoutCount = new AtomicLong();
+
+    private Thread thread;
+    private volatile boolean running = true;
+    private long startTime;
+    private long tick;
+
+    /**
+     * @param tickMillis The duration of one tick of the wheel, in milliseconds
+     * @param wheelSize The amount of buckets in the wheel, which is rounded up to a power of two
+     */
+    public TimeoutScheduler(long tickMillis, int wheelSize) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(tickMillis, 1));
+        int size = Integer.highestOneBit(Math.max(wheelSize, 1) - 1) << 1;
+        this.wheel = new TimeoutBucket[Math.max(size, 1)];
+        for (int i = 0; i < wheel.length; i++) wheel[i] = new TimeoutBucket();
+        this.mask = wheel.length - 1;
+
+        this.startTime = System.nanoTime();
+        this.thread = new Thread(this::run, "JedisJSON-Timeouts");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Schedules the task to run once, after the given delay.
+     * @param task The task
+     * @param delay The delay
+     * @param unit The unit of the delay
+     * @return The timeout, which can be cancelled
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(this, task, System.nanoTime() + unit.toNanos(delay));
+        timeoutCount.incrementAndGet();
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * @return The amount of timeouts that are scheduled, and have not expired or been cancelled yet
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * Stops the scheduler thread. Timeouts that have not expired yet will never run.
+     */
+    public void shutdown() {
+        running = false;
+        thread.interrupt();
+    }
+
+    void cancelled(Timeout timeout) {
+        timeoutCount.decrementAndGet();
+        cancelledTimeouts.add(timeout);
+    }
+
+    private void run() {
+        while (running) {
+            if (!waitForNextTick()) continue;
+            removeCancelledTimeouts();
+            transferPendingTimeouts();
+            expireTimeouts(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private boolean waitForNextTick() {
+        long tickTime = startTime + (tick + 1) * tickNanos;
+        long sleepNanos;
+        while ((sleepNanos = tickTime - System.nanoTime()) > 0) {
+            // Sleeping is rounded up to whole milliseconds, so a timeout never fires before its deadline
+            try {
+                Thread.sleep((sleepNanos + 999_999) / 1_000_000);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void removeCancelledTimeouts() {
+        Timeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) timeout.bucket.remove(timeout);
+        }
+    }
+
+    private void transferPendingTimeouts() {
+        Timeout timeout;
+        while ((timeout = pendingTimeouts.poll()) != null) {
+            if (timeout.isCancelled()) continue;
+
+            // A timeout is placed in the bucket of the tick at which it has passed its deadline,
+            // or in the current bucket if that tick has already passed
+            long ticks = Math.max((timeout.deadline - startTime) / tickNanos, tick);
+            timeout.remainingRounds = (ticks - tick) / wheel.length;
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void expireTimeouts(TimeoutBucket bucket) {
+        Timeout timeout = bucket.head;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+            } else {
+                bucket.remove(timeout);
+                if (timeout.expire()) {
+                    timeoutCount.decrementAndGet();
+                    try {
+                        timeout.task.run();
+                    } catch (Exception e) {
+                        LOGGER.log(Level.SEVERE, "Could not run a timeout", e);
+                    }
+                }
+            }
+            timeout = next;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package nl.itslars.jedisjson.transport;
+
+/**
+ * How packets are handed over to clients in the same JVM.
+ */
+public enum LocalDeliveryMode {
+
+    /**
+     * The packet is serialized by its codec when it is sent, and every receiver deserializes its own copy.
+     * The envelope and Redis are skipped, but the receivers never share an object with the sender.
+     */
+    COPY,
+
+    /**
+     * The packet object itself is handed over to the receivers. This is the fastest mode,
+     * but neither the sender nor the receivers may change the packet after it is sent.
+     * Receivers that listen for another class than the class of the packet still get a copy.
+     */
+    SHARE
+
+}
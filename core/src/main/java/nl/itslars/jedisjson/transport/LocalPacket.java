@@ -0,0 +1,45 @@
+package nl.itslars.jedisjson.transport;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import nl.itslars.jedisjson.codec.PacketCodec;
+import nl.itslars.jedisjson.dispatch.Priority;
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+import nl.itslars.jedisjson.packet.JedisJSONPacketHeader;
+
+import java.lang.reflect.Type;
+
+/**
+ * A packet that is handed over to a client in the same JVM. It contains either the packet itself,
+ * or the packet as serialized by the codec of the sender, depending on the {@link LocalDeliveryMode}.
+ */
+@AllArgsConstructor
+@Getter
+public class LocalPacket {
+
+    private JedisJSONPacketHeader header;
+    private JedisJSONPacket packet;
+    private byte[] data;
+    private PacketCodec codec;
+    private Priority priority;
+
+    /**
+     * @return The size of the serialized packet, or 0 if the packet is shared
+     */
+    public int getLength() {
+        return data == null ? 0 : data.length;
+    }
+
+    /**
+     * Returns the packet for a listener of the given type.
+     * A shared packet is returned as is if the listener expects its class, otherwise the listener gets a copy.
+     * @param codec The codec of the listener
+     * @param type The packet type of the listener
+     * @return The packet
+     */
+    public Object read(PacketCodec codec, Type type) {
+        if (data == null && packet.getClass() == type) return packet;
+        byte[] bytes = data == null ? this.codec.encode(packet) : data;
+        return codec.decode(bytes, 0, bytes.length, type);
+    }
+}
@@ -0,0 +1,73 @@
+package nl.itslars.jedisjson.transport;
+
+import nl.itslars.jedisjson.JedisJSON;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the JedisJSON instances in this JVM that use the same Redis server, and the channels they entered.
+ * Packets to these instances are handed over directly, instead of through Redis.
+ */
+public class LocalTransport {
+
+    private static final Map<String, LocalTransport> TRANSPORTS = new ConcurrentHashMap<>();
+
+    private Map<String, JedisJSON> clients = new ConcurrentHashMap<>();
+    private Map<String, Set<JedisJSON>> channels = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the transport of all instances that use the given Redis server.
+     * @param host The Redis host
+     * @param port The Redis port
+     * @return The transport
+     */
+    public static LocalTransport get(String host, int port) {
+        return TRANSPORTS.computeIfAbsent(host + ":" + port, server -> new LocalTransport());
+    }
+
+    /**
+     * Registers the instance under its client name. If another instance with the same name is already registered,
+     * packets to that name keep going to the other instance.
+     * @param client The instance
+     */
+    public void register(JedisJSON client) {
+        clients.putIfAbsent(client.getClientName(), client);
+    }
+
+    public void unregister(JedisJSON client) {
+        clients.remove(client.getClientName(), client);
+        for (Set<JedisJSON> members : channels.values()) members.remove(client);
+    }
+
+    public void joinChannel(String channel, JedisJSON client) {
+        channels.computeIfAbsent(channel, name -> ConcurrentHashMap.newKeySet()).add(client);
+    }
+
+    /**
+     * @param clientName The client name
+     * @return The instance with the given client name in this JVM, or null if there is none
+     */
+    public JedisJSON getClient(String clientName) {
+        return clients.get(clientName);
+    }
+
+    /**
+     * @param channel The channel name
+     * @return The instances in this JVM that entered the channel
+     */
+    public Set<JedisJSON> getChannelMembers(String channel) {
+        Set<JedisJSON> members = channels.get(channel);
+        return members == null ? Collections.emptySet() : members;
+    }
+
+    /**
+     * @param clientName The client name
+     * @return Whether the client is an instance in this JVM, so its channel packets are also handed over directly
+     */
+    public boolean isLocal(String clientName) {
+        return clientName != null && clients.containsKey(clientName);
+    }
+}
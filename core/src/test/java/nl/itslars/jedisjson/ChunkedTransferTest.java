@@ -0,0 +1,96 @@
+package nl.itslars.jedisjson;
+
+import com.google.gson.stream.JsonReader;
+import nl.itslars.jedisjson.codec.WireFormat;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Sends packets that are larger than the maximum message size, which are published in chunks.
+ */
+public class ChunkedTransferTest {
+
+    private static final String QUESTION = largeQuestion();
+
+    private LocalRedisServer server;
+    private JedisJSON sender;
+    private JedisJSON receiver;
+
+    private void start(JedisJSONConfig receiverConfig) throws IOException {
+        server = new LocalRedisServer();
+        sender = new JedisJSON(server.getHost(), server.getPort(), "Sender", new JedisJSONConfig().setMaxChunkBytes(1024).setLocalDelivery(false).setJmxEnabled(false));
+        receiver = new JedisJSON(server.getHost(), server.getPort(), "Receiver", receiverConfig.setLocalDelivery(false).setJmxEnabled(false));
+    }
+
+    @After
+    public void stop() throws IOException {
+        sender.shutdown();
+        receiver.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void reassemblesChunkedPackets() throws Exception {
+        start(new JedisJSONConfig());
+        BlockingQueue<QuestionPacket> received = new LinkedBlockingQueue<>();
+        receiver.onReceive(QuestionPacket.class, received::add);
+
+        for (WireFormat wireFormat : WireFormat.values()) {
+            sender.setWireFormat(wireFormat);
+            sender.send("Receiver", new QuestionPacket(QUESTION, 4));
+
+            QuestionPacket packet = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(wireFormat.name(), packet);
+            assertEquals(wireFormat.name(), QUESTION, packet.getQuestion());
+            assertEquals(4, packet.getAnswer());
+        }
+    }
+
+    @Test
+    public void streamsChunkedPackets() throws Exception {
+        start(new JedisJSONConfig());
+
+        assertEquals(QUESTION, streamQuestion());
+    }
+
+    @Test
+    public void buffersChunkedPacketsWithoutFreeStreams() throws Exception {
+        start(new JedisJSONConfig().setMaxChunkStreams(0));
+
+        assertEquals(QUESTION, streamQuestion());
+    }
+
+    private String streamQuestion() throws Exception {
+        CompletableFuture<String> question = new CompletableFuture<>();
+        receiver.onReceiveStream(QuestionPacket.class, stream -> {
+            JsonReader reader = stream.getReader();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("question")) {
+                    question.complete(reader.nextString());
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        });
+        sender.send("Receiver", new QuestionPacket(QUESTION, 4));
+        return question.get(5, TimeUnit.SECONDS);
+    }
+
+    private static String largeQuestion() {
+        char[] question = new char[100000];
+        Arrays.fill(question, '2');
+        return new String(question);
+    }
+}
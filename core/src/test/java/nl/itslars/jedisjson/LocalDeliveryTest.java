@@ -0,0 +1,115 @@
+package nl.itslars.jedisjson;
+
+import nl.itslars.jedisjson.listeners.types.Channel;
+import nl.itslars.jedisjson.transport.LocalDeliveryMode;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sends packets between clients in one JVM, which are handed over without Redis.
+ */
+public class LocalDeliveryTest {
+
+    private LocalRedisServer server;
+    private JedisJSON sender;
+    private JedisJSON receiver;
+
+    private void start(LocalDeliveryMode mode) throws IOException {
+        server = new LocalRedisServer();
+        JedisJSONConfig config = new JedisJSONConfig().setLocalDeliveryMode(mode).setJmxEnabled(false);
+        sender = new JedisJSON(server.getHost(), server.getPort(), "Sender", config);
+        receiver = new JedisJSON(server.getHost(), server.getPort(), "Receiver", config);
+    }
+
+    @After
+    public void stop() throws IOException {
+        sender.shutdown();
+        receiver.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void copiesPackets() throws Exception {
+        start(LocalDeliveryMode.COPY);
+        QuestionPacket packet = new QuestionPacket("2+2", 4);
+
+        QuestionPacket received = receive(packet);
+        assertNotSame(packet, received);
+        assertEquals("2+2", received.getQuestion());
+        assertEquals(4, received.getAnswer());
+        assertEquals("Sender", received.getSource());
+    }
+
+    @Test
+    public void sharesPackets() throws Exception {
+        start(LocalDeliveryMode.SHARE);
+        QuestionPacket packet = new QuestionPacket("2+2", 4);
+
+        assertSame(packet, receive(packet));
+    }
+
+    @Test
+    public void repliesToRequests() throws Exception {
+        start(LocalDeliveryMode.COPY);
+        receiver.onReceive(QuestionPacket.class, question -> {
+            return new QuestionPacket(question.getQuestion(), question.getAnswer() * 2);
+        });
+
+        QuestionPacket reply = sender.call("Receiver", new QuestionPacket("2+2", 4), QuestionPacket.class, 5000);
+        assertEquals(8, reply.getAnswer());
+    }
+
+    @Test
+    public void sharesCachedRepliesAsCopies() throws Exception {
+        start(LocalDeliveryMode.SHARE);
+        receiver.onReceive(QuestionPacket.class, question -> {
+            return new QuestionPacket(question.getQuestion(), question.getAnswer() * 2);
+        });
+        receiver.enableResponseCache(QuestionPacket.class, 10, 60000);
+
+        QuestionPacket first = sender.call("Receiver", new QuestionPacket("2+2", 4), QuestionPacket.class, 5000);
+        QuestionPacket second = sender.call("Receiver", new QuestionPacket("2+2", 4), QuestionPacket.class, 5000);
+        assertNotSame(first, second);
+        assertEquals(8, second.getAnswer());
+        assertEquals(1, receiver.getMetrics().getResponseCacheHits());
+    }
+
+    @Test
+    public void deliversChannelPacketsOnce() throws Exception {
+        start(LocalDeliveryMode.COPY);
+        Channel<QuestionPacket> sending = sender.enterChannel("math", QuestionPacket.class);
+        Channel<QuestionPacket> receiving = receiver.enterChannel("math", QuestionPacket.class);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch last = new CountDownLatch(1);
+        receiving.onReceive(packet -> {
+            received.add(packet.getAnswer());
+            if (packet.getAnswer() == 3) last.countDown();
+        });
+
+        for (int i = 1; i <= 3; i++) sending.broadcast(new QuestionPacket("?", i));
+        assertTrue(last.await(5, TimeUnit.SECONDS));
+        // The copies of the packets that were also published to Redis are skipped
+        Thread.sleep(200);
+        assertEquals(3, received.size());
+    }
+
+    private QuestionPacket receive(QuestionPacket packet) throws Exception {
+        CompletableFuture<QuestionPacket> received = new CompletableFuture<>();
+        receiver.onReceive(QuestionPacket.class, received::complete);
+        sender.send("Receiver", packet);
+        return received.get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,272 @@
+package nl.itslars.jedisjson;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * A minimal Redis stand-in that only implements pub/sub, so the tests and benchmarks run without a Redis server.
+ * It speaks the RESP protocol over a local socket, so JedisJSON and Jedis run exactly as they would against Redis.
+ * Every connection is served by its own thread. Replies and published messages are flushed once the
+ * connection has no more pipelined commands, so pipelined publishing stays pipelined.
+ */
+public class LocalRedisServer implements Closeable {
+
+    private ServerSocket serverSocket;
+    private Map<String, Set<Connection>> subscribers = new ConcurrentHashMap<>();
+    private Set<Connection> connections = new CopyOnWriteArraySet<>();
+    private volatile boolean running = true;
+
+    /**
+     * Starts the server on a free local port.
+     */
+    public LocalRedisServer() throws IOException {
+        this.serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "LocalRedisServer-Acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public String getHost() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        for (Connection connection : connections) connection.close();
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Connection connection = new Connection(socket);
+                connections.add(connection);
+                Thread thread = new Thread(connection, "LocalRedisServer-Connection");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (running) e.printStackTrace();
+            }
+        }
+    }
+
+    private class Connection implements Runnable {
+
+        private Socket socket;
+        private InputStream in;
+        private OutputStream out;
+        private Set<String> channels = ConcurrentHashMap.newKeySet();
+        // The subscribers that received a message since the last flush
+        private Set<Connection> unflushed = new HashSet<>();
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream(), 65536);
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 65536);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    List<byte[]> command = readCommand();
+                    if (command == null) break;
+                    if (!handle(command)) break;
+                    if (in.available() == 0) flush();
+                }
+            } catch (IOException e) {
+                // The client disconnected
+            } finally {
+                close();
+            }
+        }
+
+        private boolean handle(List<byte[]> command) throws IOException {
+            String name = new String(command.get(0), StandardCharsets.US_ASCII).toUpperCase();
+            switch (name) {
+                case "PUBLISH":
+                    publish(key(command.get(1)), command.get(1), command.get(2));
+                    return true;
+                case "SUBSCRIBE":
+                    for (int i = 1; i < command.size(); i++) {
+                        String channel = key(command.get(i));
+                        channels.add(channel);
+                        subscribers.computeIfAbsent(channel, c -> new CopyOnWriteArraySet<>()).add(this);
+                        writeSubscription("subscribe", command.get(i));
+                    }
+                    return true;
+                case "UNSUBSCRIBE":
+                    List<byte[]> unsubscribed = new ArrayList<>(command.subList(1, command.size()));
+                    if (unsubscribed.isEmpty()) {
+                        for (String channel : channels) unsubscribed.add(channel.getBytes(StandardCharsets.ISO_8859_1));
+                    }
+                    for (byte[] channel : unsubscribed) {
+                        channels.remove(key(channel));
+                        Set<Connection> connections = subscribers.get(key(channel));
+                        if (connections != null) connections.remove(this);
+                        writeSubscription("unsubscribe", channel);
+                    }
+                    if (unsubscribed.isEmpty()) writeSubscription("unsubscribe", null);
+                    return true;
+                case "PING":
+                    write("+PONG\r\n");
+                    return true;
+                case "QUIT":
+                    write("+OK\r\n");
+                    flush();
+                    return false;
+                default:
+                    write("+OK\r\n");
+                    return true;
+            }
+        }
+
+        private void publish(String channel, byte[] rawChannel, byte[] message) throws IOException {
+            Set<Connection> connections = subscribers.get(channel);
+            int receivers = 0;
+            if (connections != null) {
+                for (Connection connection : connections) {
+                    connection.writeMessage(rawChannel, message);
+                    unflushed.add(connection);
+                    receivers++;
+                }
+            }
+            write(":" + receivers + "\r\n");
+        }
+
+        private void flush() throws IOException {
+            for (Connection connection : unflushed) connection.flushOutput();
+            unflushed.clear();
+            flushOutput();
+        }
+
+        private void writeMessage(byte[] channel, byte[] message) {
+            synchronized (out) {
+                try {
+                    writeRaw("*3\r\n$7\r\nmessage\r\n");
+                    writeBulk(channel);
+                    writeBulk(message);
+                } catch (IOException e) {
+                    close();
+                }
+            }
+        }
+
+        private void writeSubscription(String type, byte[] channel) throws IOException {
+            synchronized (out) {
+                writeRaw("*3\r\n");
+                writeBulk(type.getBytes(StandardCharsets.US_ASCII));
+                writeBulk(channel);
+                writeRaw(":" + channels.size() + "\r\n");
+            }
+        }
+
+        private void write(String reply) throws IOException {
+            synchronized (out) {
+                writeRaw(reply);
+            }
+        }
+
+        private void writeBulk(byte[] bytes) throws IOException {
+            if (bytes == null) {
+                writeRaw("$-1\r\n");
+                return;
+            }
+            writeRaw("$" + bytes.length + "\r\n");
+            out.write(bytes);
+            writeRaw("\r\n");
+        }
+
+        private void writeRaw(String string) throws IOException {
+            out.write(string.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        private void flushOutput() {
+            synchronized (out) {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    close();
+                }
+            }
+        }
+
+        private List<byte[]> readCommand() throws IOException {
+            int first = in.read();
+            if (first == -1) return null;
+            if (first != '*') throw new IOException("Inline commands are not supported");
+            int count = (int) readNumber();
+            List<byte[]> command = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                if (in.read() != '$') throw new IOException("Expected a bulk string");
+                byte[] bytes = new byte[(int) readNumber()];
+                int read = 0;
+                while (read < bytes.length) {
+                    int n = in.read(bytes, read, bytes.length - read);
+                    if (n == -1) throw new EOFException();
+                    read += n;
+                }
+                in.read();
+                in.read();
+                command.add(bytes);
+            }
+            return command;
+        }
+
+        private long readNumber() throws IOException {
+            long value = 0;
+            boolean negative = false;
+            int b;
+            while ((b = in.read()) != '\r') {
+                if (b == -1) throw new EOFException();
+                if (b == '-') {
+                    negative = true;
+                } else {
+                    value = value * 10 + (b - '0');
+                }
+            }
+            in.read();
+            return negative ? -value : value;
+        }
+
+        private void close() {
+            connections.remove(this);
+            for (String channel : channels) {
+                Set<Connection> connections = subscribers.get(channel);
+                if (connections != null) connections.remove(this);
+            }
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static String key(byte[] channel) {
+        // ISO-8859-1 maps every byte to one character, so binary channel names stay distinct
+        return new String(channel, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,14 @@
+package nl.itslars.jedisjson;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+
+@AllArgsConstructor
+@Getter
+public class QuestionPacket extends JedisJSONPacket {
+
+    private String question;
+    private int answer;
+
+}
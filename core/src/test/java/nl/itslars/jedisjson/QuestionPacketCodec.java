@@ -0,0 +1,32 @@
+package nl.itslars.jedisjson;
+
+import nl.itslars.jedisjson.codec.PacketCodec;
+import nl.itslars.jedisjson.packet.JedisJSONPacket;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A binary codec, which writes the answer as four bytes, followed by the question.
+ */
+public class QuestionPacketCodec implements PacketCodec {
+
+    @Override
+    public byte[] encode(JedisJSONPacket packet) {
+        QuestionPacket question = (QuestionPacket) packet;
+        byte[] text = question.getQuestion().getBytes(StandardCharsets.UTF_8);
+        byte[] data = new byte[4 + text.length];
+        int answer = question.getAnswer();
+        for (int i = 0; i < 4; i++) data[i] = (byte) (answer >>> (24 - i * 8));
+        System.arraycopy(text, 0, data, 4, text.length);
+        return data;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T decode(byte[] data, int offset, int length, Type type) {
+        int answer = 0;
+        for (int i = 0; i < 4; i++) answer = answer << 8 | data[offset + i] & 0xFF;
+        return (T) new QuestionPacket(new String(data, offset + 4, length - 4, StandardCharsets.UTF_8), answer);
+    }
+}
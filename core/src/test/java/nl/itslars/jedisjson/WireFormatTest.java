@@ -0,0 +1,106 @@
+package nl.itslars.jedisjson;
+
+import nl.itslars.jedisjson.codec.WireFormat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Sends packets through Redis in every wire format, to a receiver that uses the default format.
+ */
+@RunWith(Parameterized.class)
+public class WireFormatTest {
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<WireFormat> formats() {
+        return Arrays.asList(WireFormat.values());
+    }
+
+    @Parameterized.Parameter
+    public WireFormat wireFormat;
+
+    private LocalRedisServer server;
+    private JedisJSON sender;
+    private JedisJSON receiver;
+
+    @Before
+    public void start() throws IOException {
+        server = new LocalRedisServer();
+        // Without local delivery, the packets are published to Redis, also between clients in this JVM
+        JedisJSONConfig config = new JedisJSONConfig().setLocalDelivery(false).setJmxEnabled(false);
+        sender = new JedisJSON(server.getHost(), server.getPort(), "Sender", config);
+        receiver = new JedisJSON(server.getHost(), server.getPort(), "Receiver", config);
+        sender.setWireFormat(wireFormat);
+    }
+
+    @After
+    public void stop() throws IOException {
+        sender.shutdown();
+        receiver.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void deliversPackets() throws Exception {
+        QuestionPacket received = receive(new QuestionPacket("2+2", 4));
+
+        assertEquals("2+2", received.getQuestion());
+        assertEquals(4, received.getAnswer());
+        assertEquals("Sender", received.getSource());
+    }
+
+    @Test
+    public void deliversAttributes() throws Exception {
+        QuestionPacket packet = new QuestionPacket("2+2", 4);
+        packet.setAttribute("region", "eu");
+
+        assertEquals("eu", receive(packet).getAttribute("region"));
+    }
+
+    @Test
+    public void repliesToRequests() throws Exception {
+        receiver.onReceive(QuestionPacket.class, question -> {
+            return new QuestionPacket(question.getQuestion(), question.getAnswer() * 2);
+        });
+
+        QuestionPacket reply = sender.call("Receiver", new QuestionPacket("2+2", 4), QuestionPacket.class, 5000);
+        assertEquals(8, reply.getAnswer());
+    }
+
+    @Test
+    public void usesTheCodecOfThePacketClass() throws Exception {
+        sender.registerCodec(QuestionPacket.class, new QuestionPacketCodec());
+        receiver.registerCodec(QuestionPacket.class, new QuestionPacketCodec());
+
+        QuestionPacket received = receive(new QuestionPacket("2+2", 4));
+        assertEquals("2+2", received.getQuestion());
+        assertEquals(4, received.getAnswer());
+    }
+
+    @Test
+    public void decompressesLargePackets() throws Exception {
+        sender.enableCompression(QuestionPacket.class, 1024);
+        char[] question = new char[100000];
+        Arrays.fill(question, '2');
+
+        QuestionPacket received = receive(new QuestionPacket(new String(question), 4));
+        assertEquals(new String(question), received.getQuestion());
+    }
+
+    private QuestionPacket receive(QuestionPacket packet) throws Exception {
+        CompletableFuture<QuestionPacket> received = new CompletableFuture<>();
+        receiver.onReceive(QuestionPacket.class, received::complete);
+        sender.send("Receiver", packet);
+        return received.get(5, TimeUnit.SECONDS);
+    }
+}
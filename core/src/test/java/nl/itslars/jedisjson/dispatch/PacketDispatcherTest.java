@@ -0,0 +1,181 @@
+package nl.itslars.jedisjson.dispatch;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PacketDispatcherTest {
+
+    private static final String KEY = "channel";
+    private static final String SOURCE = "ClientA";
+
+    private PacketDispatcher dispatcher;
+    private List<Integer> handled = Collections.synchronizedList(new ArrayList<>());
+    private AtomicInteger shed = new AtomicInteger();
+    private CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void shutdown() {
+        release.countDown();
+        if (dispatcher != null) dispatcher.shutdown();
+    }
+
+    @Test
+    public void handlesTasksOfOneKeyInOrder() {
+        dispatcher = new PacketDispatcher(4);
+        for (int i = 0; i < 1000; i++) {
+            int task = i;
+            dispatcher.dispatch(KEY, () -> handled.add(task));
+        }
+        dispatcher.shutdown();
+
+        assertEquals(1000, handled.size());
+        for (int i = 0; i < 1000; i++) assertEquals(i, (int) handled.get(i));
+    }
+
+    @Test
+    public void blockWaitsForSpace() throws InterruptedException {
+        dispatcher = new PacketDispatcher(1, 2, 2, 0);
+        blockThread();
+        dispatch(1, OverloadPolicy.BLOCK);
+        dispatch(2, OverloadPolicy.BLOCK);
+
+        CountDownLatch dispatched = new CountDownLatch(1);
+        new Thread(() -> {
+            dispatch(3, OverloadPolicy.BLOCK);
+            dispatched.countDown();
+        }).start();
+        assertFalse(dispatched.await(200, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        assertTrue(dispatched.await(5, TimeUnit.SECONDS));
+        dispatcher.shutdown();
+        assertEquals(Arrays.asList(1, 2, 3), handled);
+    }
+
+    @Test
+    public void dropNewestShedsIncomingTasks() throws InterruptedException {
+        dispatcher = overloadedDispatcher(OverloadPolicy.DROP_NEWEST);
+        for (int i = 1; i <= 10; i++) dispatch(i, OverloadPolicy.DROP_NEWEST);
+        release.countDown();
+        dispatcher.shutdown();
+
+        assertEquals(Arrays.asList(1, 2, 3), handled);
+        assertEquals(7, shed.get());
+    }
+
+    @Test
+    public void dropOldestShedsQueuedTasks() throws InterruptedException {
+        dispatcher = overloadedDispatcher(OverloadPolicy.DROP_OLDEST);
+        for (int i = 1; i <= 10; i++) dispatch(i, OverloadPolicy.DROP_OLDEST);
+        release.countDown();
+        dispatcher.shutdown();
+
+        assertEquals(Arrays.asList(8, 9, 10), handled);
+        assertEquals(7, shed.get());
+    }
+
+    @Test
+    public void conflateReplacesTheQueuedTask() throws InterruptedException {
+        dispatcher = overloadedDispatcher(OverloadPolicy.CONFLATE);
+        for (int i = 1; i <= 10; i++) dispatch(i, OverloadPolicy.CONFLATE);
+        release.countDown();
+        dispatcher.shutdown();
+
+        assertEquals(Collections.singletonList(10), handled);
+        assertEquals(9, shed.get());
+    }
+
+    @Test
+    public void notifiesOverloadAndRecovery() throws InterruptedException {
+        dispatcher = new PacketDispatcher(1, 100, 3, 1);
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        dispatcher.addOverloadListener(new OverloadListener() {
+            @Override
+            public void onOverloaded() {
+                events.add("overloaded");
+            }
+
+            @Override
+            public void onRecovered() {
+                events.add("recovered");
+            }
+        });
+        blockThread();
+        for (int i = 1; i <= 5; i++) dispatch(i, OverloadPolicy.BLOCK);
+        assertTrue(dispatcher.isOverloaded());
+
+        release.countDown();
+        dispatcher.shutdown();
+        assertFalse(dispatcher.isOverloaded());
+        assertEquals(Arrays.asList("overloaded", "recovered"), events);
+    }
+
+    @Test
+    public void handlesHigherLanesFirst() throws InterruptedException {
+        dispatcher = new PacketDispatcher(1);
+        blockThread();
+        dispatcher.dispatch(KEY, Priority.LOW, () -> handled.add(3));
+        dispatcher.dispatch(KEY, Priority.NORMAL, () -> handled.add(2));
+        dispatcher.dispatch(KEY, Priority.HIGH, () -> handled.add(1));
+        release.countDown();
+        dispatcher.shutdown();
+
+        assertEquals(Arrays.asList(1, 2, 3), handled);
+    }
+
+    @Test
+    public void dispatcherThreadsDoNotWaitForThemselves() throws InterruptedException {
+        dispatcher = new PacketDispatcher(1, 1, 1, 0);
+        CountDownLatch done = new CountDownLatch(10);
+        // Like a listener that sends packets to a client in this JVM, which are queued on the same full queue
+        dispatcher.dispatch(KEY, () -> {
+            for (int i = 0; i < 10; i++) dispatcher.dispatch(KEY, done::countDown);
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Creates a dispatcher with one thread, which is busy, and a high watermark of 3 queued tasks.
+     */
+    private PacketDispatcher overloadedDispatcher(OverloadPolicy policy) throws InterruptedException {
+        PacketDispatcher dispatcher = new PacketDispatcher(1, 100, 3, 0);
+        dispatcher.setOverloadPolicy(Integer.class, policy);
+        dispatcher.setShedHandler(packetClass -> shed.incrementAndGet());
+        this.dispatcher = dispatcher;
+        blockThread();
+        return dispatcher;
+    }
+
+    /**
+     * Keeps the dispatcher thread busy until the test releases it, so the next tasks are queued.
+     */
+    private void blockThread() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        dispatcher.dispatch(KEY, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    private void dispatch(int task, OverloadPolicy policy) {
+        dispatcher.dispatch(KEY, policy == OverloadPolicy.BLOCK ? null : Integer.class, SOURCE, true, Priority.NORMAL, () -> handled.add(task));
+    }
+}
@@ -0,0 +1,93 @@
+package nl.itslars.jedisjson.listeners;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChunkInputStreamTest {
+
+    private AtomicInteger released = new AtomicInteger();
+    private ChunkInputStream input = new ChunkInputStream(released::addAndGet);
+
+    @Test
+    public void readsThePartsInOrder() throws IOException {
+        add("{\"question\":", false);
+        add("\"2+2\"}", true);
+
+        assertEquals("{\"question\":\"2+2\"}", readAll());
+        assertEquals(18, released.get());
+    }
+
+    @Test
+    public void waitsForTheNextPart() throws Exception {
+        add("{\"question\":", false);
+        CompletableFuture<String> read = CompletableFuture.supplyAsync(this::readAllUnchecked);
+        try {
+            read.get(200, TimeUnit.MILLISECONDS);
+            fail("The stream ended before its last part arrived");
+        } catch (TimeoutException expected) {
+            // The reader waits for the rest of the transfer
+        }
+
+        add("\"2+2\"}", true);
+        assertEquals("{\"question\":\"2+2\"}", read.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = IOException.class)
+    public void failsWhenTheTransferIsAborted() throws IOException {
+        add("{\"question\":", false);
+        input.fail(new IOException("The transfer timed out"));
+
+        readAll();
+    }
+
+    @Test
+    public void releasesUnreadPartsWhenClosed() {
+        add("{\"question\":", false);
+        input.close();
+
+        assertEquals(12, released.get());
+        // Parts that arrive after the stream is closed are not buffered
+        assertFalse(add("\"2+2\"}", true));
+    }
+
+    @Test
+    public void ignoresFailuresAfterTheLastPart() throws IOException {
+        assertTrue(add("{}", true));
+        input.fail(new IOException("The transfer timed out"));
+
+        assertEquals("{}", readAll());
+    }
+
+    private boolean add(String part, boolean last) {
+        byte[] data = part.getBytes(StandardCharsets.UTF_8);
+        return input.add(data, 0, data.length, last);
+    }
+
+    private String readAll() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[5];
+        int read;
+        while ((read = input.read(buffer, 0, buffer.length)) >= 0) out.write(buffer, 0, read);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private String readAllUnchecked() {
+        try {
+            return readAll();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package nl.itslars.jedisjson.packet;
+
+import nl.itslars.jedisjson.QuestionPacket;
+import nl.itslars.jedisjson.QuestionPacketCodec;
+import nl.itslars.jedisjson.codec.PacketCodec;
+import nl.itslars.jedisjson.compress.DeflatePacketCompressor;
+import nl.itslars.jedisjson.compress.PacketCompressor;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryPacketEnvelopeTest {
+
+    private PacketCodec codec = new QuestionPacketCodec();
+    private PacketCompressor compressor = new DeflatePacketCompressor();
+
+    @Test
+    public void writesTheClassName() {
+        JedisJSONPacketHeader header = new JedisJSONPacketHeader("id-1", "ClientA", "QuestionPacket", 0, Collections.singletonMap("region", "eu"));
+        byte[] message = BinaryPacketEnvelope.write(header, new QuestionPacket("2+2", 4), codec, null, Integer.MAX_VALUE);
+
+        assertTrue(BinaryPacketEnvelope.isBinary(message));
+        assertEquals("id-1", BinaryPacketEnvelope.readId(message));
+        BinaryPacketEnvelope.Frame frame = BinaryPacketEnvelope.read(message, new PacketRegistry());
+        assertEquals("id-1", frame.getHeader().getId());
+        assertEquals("ClientA", frame.getHeader().getSource());
+        assertEquals("QuestionPacket", frame.getHeader().getClazz());
+        assertEquals("eu", frame.getHeader().getAttribute("region"));
+        assertFalse(frame.isCompressed());
+        assertPacket(codec.decode(frame.getData(), frame.getOffset(), frame.getLength(), QuestionPacket.class));
+    }
+
+    @Test
+    public void resolvesTypeIds() {
+        PacketRegistry registry = new PacketRegistry();
+        PacketType type = registry.register(QuestionPacket.class, PacketRegistry.FIRST_USER_TYPE_ID);
+        JedisJSONPacketHeader header = new JedisJSONPacketHeader("id-1", "ClientA", type.getName(), type.getId());
+        byte[] message = BinaryPacketEnvelope.write(header, new QuestionPacket("2+2", 4), codec, null, Integer.MAX_VALUE);
+
+        BinaryPacketEnvelope.Frame frame = BinaryPacketEnvelope.read(message, registry);
+        assertEquals("QuestionPacket", frame.getHeader().getClazz());
+        assertEquals(PacketRegistry.FIRST_USER_TYPE_ID, frame.getHeader().getTypeId());
+        assertEquals("id-1", BinaryPacketEnvelope.readId(message));
+
+        // A receiver that does not know the type ID can not resolve the class
+        assertNull(BinaryPacketEnvelope.read(message, new PacketRegistry()).getHeader().getClazz());
+    }
+
+    @Test
+    public void compressesLargePackets() {
+        JedisJSONPacketHeader header = new JedisJSONPacketHeader("id-1", "ClientA", "QuestionPacket");
+        byte[] message = BinaryPacketEnvelope.write(header, new QuestionPacket("2+2", 4), codec, compressor, 0);
+
+        BinaryPacketEnvelope.Frame frame = BinaryPacketEnvelope.read(message, new PacketRegistry());
+        assertTrue(frame.isCompressed());
+        byte[] data = compressor.decompress(frame.getData(), frame.getOffset(), frame.getLength());
+        assertPacket(codec.decode(data, 0, data.length, QuestionPacket.class));
+    }
+
+    private static void assertPacket(QuestionPacket packet) {
+        assertEquals("2+2", packet.getQuestion());
+        assertEquals(4, packet.getAnswer());
+    }
+}
@@ -0,0 +1,100 @@
+package nl.itslars.jedisjson.packet;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import nl.itslars.jedisjson.QuestionPacket;
+import nl.itslars.jedisjson.QuestionPacketCodec;
+import nl.itslars.jedisjson.codec.GsonPacketCodec;
+import nl.itslars.jedisjson.codec.PacketCodec;
+import nl.itslars.jedisjson.compress.DeflatePacketCompressor;
+import nl.itslars.jedisjson.compress.PacketCompressor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JedisJSONPacketEnvelopeTest {
+
+    private static final JedisJSONPacketHeader HEADER = new JedisJSONPacketHeader("id-1", "ClientA", "QuestionPacket", 0, Collections.singletonMap("region", "eu"));
+
+    private PacketCodec codec = new GsonPacketCodec(new Gson());
+    private PacketCompressor compressor = new DeflatePacketCompressor();
+
+    @Test
+    public void embedsThePacketAsLastField() {
+        byte[] message = JedisJSONPacketEnvelope.write(HEADER, new QuestionPacket("2+2", 4), codec, false, null, Integer.MAX_VALUE);
+        String json = new String(message, StandardCharsets.UTF_8);
+
+        assertTrue(json, json.endsWith("\"data\":{\"question\":\"2+2\",\"answer\":4}}"));
+    }
+
+    @Test
+    public void scansTheHeaderAndReadsTheBody() {
+        byte[] message = JedisJSONPacketEnvelope.write(HEADER, new QuestionPacket("2+2", 4), codec, false, null, Integer.MAX_VALUE);
+
+        JedisJSONPacketEnvelope.Frame frame = JedisJSONPacketEnvelope.scan(message);
+        assertNotNull(frame);
+        assertHeader(frame.getHeader());
+        assertEquals(JedisJSONPacketEnvelope.DATA, frame.getField());
+        assertPacket(JedisJSONPacketEnvelope.readBody(message, frame, codec, compressor, QuestionPacket.class));
+    }
+
+    @Test
+    public void compressesLargePackets() {
+        byte[] message = JedisJSONPacketEnvelope.write(HEADER, new QuestionPacket("2+2", 4), codec, false, compressor, 0);
+
+        JedisJSONPacketEnvelope.Frame frame = JedisJSONPacketEnvelope.scan(message);
+        assertNotNull(frame);
+        assertEquals(JedisJSONPacketEnvelope.ZIP, frame.getField());
+        assertPacket(JedisJSONPacketEnvelope.readBody(message, frame, codec, compressor, QuestionPacket.class));
+    }
+
+    @Test
+    public void embedsPacketsOfBinaryCodecsAsBase64() {
+        PacketCodec binary = new QuestionPacketCodec();
+        byte[] message = JedisJSONPacketEnvelope.write(HEADER, new QuestionPacket("2+2", 4), binary, false, null, Integer.MAX_VALUE);
+
+        JedisJSONPacketEnvelope.Frame frame = JedisJSONPacketEnvelope.scan(message);
+        assertNotNull(frame);
+        assertEquals(JedisJSONPacketEnvelope.BIN, frame.getField());
+        assertPacket(JedisJSONPacketEnvelope.readBody(message, frame, binary, compressor, QuestionPacket.class));
+    }
+
+    @Test
+    public void readsLegacyEnvelopes() throws IOException {
+        byte[] message = JedisJSONPacketEnvelope.write(HEADER, new QuestionPacket("2+2", 4), codec, true, compressor, 0);
+
+        // Legacy envelopes embed the packet as escaped string, and are never compressed
+        assertNull(JedisJSONPacketEnvelope.scan(message));
+        assertHeader(JedisJSONPacketEnvelope.readHeader(message));
+        JsonReader reader = JedisJSONPacketEnvelope.reader(message);
+        reader.beginObject();
+        while (!reader.nextName().equals(JedisJSONPacketEnvelope.DATA)) reader.skipValue();
+        assertPacket(JedisJSONPacketEnvelope.readData(reader, codec, QuestionPacket.class));
+    }
+
+    @Test
+    public void readsTheIdOnly() {
+        byte[] message = JedisJSONPacketEnvelope.write(HEADER, new QuestionPacket("2+2", 4), codec, false, null, Integer.MAX_VALUE);
+
+        assertEquals("id-1", JedisJSONPacketEnvelope.readId(message));
+    }
+
+    private static void assertHeader(JedisJSONPacketHeader header) {
+        assertEquals("id-1", header.getId());
+        assertEquals("ClientA", header.getSource());
+        assertEquals("QuestionPacket", header.getClazz());
+        assertEquals("eu", header.getAttribute("region"));
+    }
+
+    private static void assertPacket(QuestionPacket packet) {
+        assertEquals("2+2", packet.getQuestion());
+        assertEquals(4, packet.getAnswer());
+    }
+}
@@ -0,0 +1,54 @@
+package nl.itslars.jedisjson.packet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PacketChunkTest {
+
+    @Test
+    public void splitsAndReassemblesAnEnvelope() {
+        byte[] message = new byte[10000];
+        new Random(1).nextBytes(message);
+
+        List<byte[]> chunks = PacketChunk.split("transfer-1", "QuestionPacket", message, 4096);
+        assertEquals(3, chunks.size());
+
+        ByteArrayOutputStream envelope = new ByteArrayOutputStream();
+        for (int i = 0; i < chunks.size(); i++) {
+            assertTrue(PacketChunk.isChunk(chunks.get(i)));
+            PacketChunk chunk = PacketChunk.read(chunks.get(i));
+            assertEquals("transfer-1", chunk.getTransferId());
+            assertEquals(i, chunk.getIndex());
+            assertEquals(3, chunk.getCount());
+            assertEquals(message.length, chunk.getTotalLength());
+            assertEquals(i == 0, chunk.isFirst());
+            assertEquals(i == 2, chunk.isLast());
+            // Only the first chunk carries the class name
+            if (i == 0) {
+                assertEquals("QuestionPacket", chunk.getClazz());
+            } else {
+                assertNull(chunk.getClazz());
+            }
+            envelope.write(chunk.getData(), chunk.getOffset(), chunk.getLength());
+        }
+        assertArrayEquals(message, envelope.toByteArray());
+    }
+
+    @Test
+    public void chunksAreNoEnvelopes() {
+        byte[] chunk = PacketChunk.split("transfer-1", "QuestionPacket", new byte[]{'{', '}'}, 1).get(0);
+
+        assertFalse(BinaryPacketEnvelope.isBinary(chunk));
+        assertFalse(PacketBundle.isBundle(chunk));
+        assertFalse(PacketChunk.isChunk(new byte[]{'{', '}'}));
+    }
+}